@@ -0,0 +1,99 @@
+package data_structures;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Runs a set of workers either as platform threads, one per WorkerThread,
+ * or as tasks of a virtual-thread-per-task executor. Virtual threads are
+ * scheduled on a small pool of carrier threads, so the number of workers
+ * can be far larger than the number of cores. A blocked ReentrantLock
+ * parks the virtual thread and frees its carrier; only blocking inside a
+ * synchronized block or native frame would pin the carrier.
+ *
+ * The executor is looked up reflectively so that the sources still build
+ * on JDKs older than 21; there virtual mode falls back to platform threads.
+ */
+class Execution {
+
+	private static final Method NEW_VIRTUAL_EXECUTOR = lookupVirtualExecutor();
+
+	private boolean virtual;
+	private WorkerThread[] workers;
+	private ExecutorService executor;
+
+	Execution(boolean virtual) {
+		this.virtual = virtual && NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	static boolean virtualThreadsAvailable() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	/*
+	 * Sets the number of carrier threads for virtual threads. Has no effect
+	 * once the first virtual thread has been created.
+	 */
+	static void setCarriers(int carriers) {
+		System.setProperty("jdk.virtualThreadScheduler.parallelism", Integer.toString(carriers));
+		System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", Integer.toString(carriers));
+	}
+
+	/*
+	 * Makes the JDK print a stack trace whenever a virtual thread blocks
+	 * while pinned to its carrier. Has to be set before the first virtual
+	 * thread is created.
+	 */
+	static void tracePinning() {
+		System.setProperty("jdk.tracePinnedThreads", "short");
+	}
+
+	void start(WorkerThread[] workers) {
+		this.workers = workers;
+		if (!virtual) {
+			for (WorkerThread worker : workers) {
+				worker.start();
+			}
+			return;
+		}
+		try {
+			executor = (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+		for (WorkerThread worker : workers) {
+			executor.execute(worker); // runs WorkerThread.run() on a virtual thread
+		}
+	}
+
+	void join() throws InterruptedException {
+		if (!virtual) {
+			for (WorkerThread worker : workers) {
+				worker.join();
+			}
+			return;
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	public String toString() {
+		if (!virtual) {
+			return workers.length + " platform threads";
+		}
+		String carriers = System.getProperty("jdk.virtualThreadScheduler.parallelism");
+		return workers.length + " virtual threads on "
+				+ (carriers != null ? carriers : Integer.toString(Runtime.getRuntime().availableProcessors()))
+				+ " carriers";
+	}
+
+	private static Method lookupVirtualExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package data_structures;
+
+/*
+ * Primitive counterpart of Sorted<Integer>: keys are stored and compared
+ * as ints, so callers holding an int[] never box.
+ */
+public interface IntSorted {
+	public void add(int t);
+	public void remove(int t);
+	public boolean contains(int t);
+	public int size();
+
+	/*
+	 * Batch versions of add and remove for ts[from..to), which must be in
+	 * ascending order; see Sorted.addAll.
+	 */
+	public default void addAll(int[] ts, int from, int to) {
+		for (int i = from; i < to; i++) {
+			add(ts[i]);
+		}
+	}
+
+	public default void removeAll(int[] ts, int from, int to) {
+		for (int i = from; i < to; i++) {
+			remove(ts[i]);
+		}
+	}
+}
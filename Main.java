@@ -1,14 +1,37 @@
 package data_structures;
 
+import java.util.Locale;
 import java.util.Random;
 import java.util.concurrent.CyclicBarrier;
+import java.util.function.Supplier;
 
+import data_structures.implementation.AVLTree;
+import data_structures.implementation.AdaptiveSorted;
+import data_structures.implementation.BLinkTree;
 import data_structures.implementation.CoarseGrainedList;
 import data_structures.implementation.CoarseGrainedTree;
+import data_structures.implementation.CopyOnWriteTree;
+import data_structures.implementation.EliminationSorted;
 import data_structures.implementation.FineGrainedList;
+import data_structures.implementation.FlatCombiningSorted;
 import data_structures.implementation.FineGrainedTree;
+import data_structures.implementation.IntCoarseGrainedList;
+import data_structures.implementation.IntCoarseGrainedTree;
+import data_structures.implementation.IntFineGrainedList;
+import data_structures.implementation.IntFineGrainedTree;
+import data_structures.implementation.LazyList;
+import data_structures.implementation.LazySkipList;
+import data_structures.implementation.LockStrategy;
 import data_structures.implementation.LockFreeList;
+import data_structures.implementation.LockFreeSkipList;
 import data_structures.implementation.LockFreeTree;
+import data_structures.implementation.OffHeapCoarseGrainedTree;
+import data_structures.implementation.OptimisticList;
+import data_structures.implementation.ShardedSorted;
+import data_structures.metrics.MeasuredSorted;
+import data_structures.metrics.Metrics;
+import data_structures.workload.OperationStream;
+import data_structures.workload.Workload;
 
 public class Main {
 
@@ -18,6 +41,30 @@ public class Main {
 	private static final String FGT = "fgt";
 	private static final String LFL = "lfl";
 	private static final String LFT = "lft";
+	private static final String OPL = "opl";
+	private static final String LZL = "lzl";
+	private static final String LZS = "lzs";
+	private static final String LFS = "lfs";
+	private static final String AVL = "avl";
+	private static final String FCL = "fcl";
+	private static final String FCT = "fct";
+	private static final String SCL = "scl";
+	private static final String SCT = "sct";
+	private static final String CWT = "cwt";
+	private static final String EFL = "efl";
+	private static final String EFT = "eft";
+	private static final String ADA = "ada";
+	private static final String BLT = "blt";
+	private static final String ICGL = "icgl";
+	private static final String ICGT = "icgt";
+	private static final String IFGL = "ifgl";
+	private static final String IFGT = "ifgt";
+	private static final String OCGT = "ocgt";
+	private static final String IBLT = "iblt";
+
+	private static final int NO_METRICS = 0;
+	private static final int PRINT_METRICS = 1;
+	private static final int JMX_METRICS = 2;
 
   // Compute a unique number from the three parameters
 	private static long computeSeed(int param1, int param2, int param3) {
@@ -67,94 +114,391 @@ public class Main {
 		permute(itemsToRemove, seed + 1);
 	}
 
-	private static void createWorkData(int[] itemsToAdd, int[] itemsToRemove, long seed, boolean doubles) {
-		if (doubles) {
+  // Fills the itemsToAdd and itemsToRemove arrays with ascending numbers.
+  // Every thread gets a consecutive slice, so each thread adds and removes
+  // its numbers in ascending order. There will be no double numbers.
+	private static void createSortedWorkData(int[] itemsToAdd, int[] itemsToRemove) {
+		for (int i = 0; i < itemsToAdd.length; i++) {
+			itemsToAdd[i] = i;
+			itemsToRemove[i] = i;
+		}
+	}
+
+	private static void createWorkData(int[] itemsToAdd, int[] itemsToRemove, long seed, boolean doubles, boolean sortedKeys) {
+		if (sortedKeys) {
+			createSortedWorkData(itemsToAdd, itemsToRemove);
+		} else if (doubles) {
 			createWorkDataWithDoubles(itemsToAdd, itemsToRemove, seed);
 		} else {
 			createWorkDataWithoutDoubles(itemsToAdd, itemsToRemove, seed);
 		}
 	}
 
-	private static void startThreads(Sorted<Integer> sorted, int nrThreads, int nrItems, int workTime, long seed, boolean doubles, boolean debug) throws InterruptedException {
+	// Exactly one of sorted and intSorted is non-null
+	private static void startThreads(Sorted<Integer> sorted, IntSorted intSorted, int nrThreads, int nrItems, int workTime, int readPercentage, int batchSize, long seed, boolean doubles, boolean sortedKeys, boolean virtual, boolean debug) throws InterruptedException {
 		int[] itemsToAdd = new int[nrItems];
 		int[] itemsToRemove = new int[nrItems];
-		createWorkData(itemsToAdd, itemsToRemove, seed, doubles);
+		createWorkData(itemsToAdd, itemsToRemove, seed, doubles, sortedKeys);
 
 		WorkerThread[] workerThreads = new WorkerThread[nrThreads];
 		CyclicBarrier barrier = new CyclicBarrier(nrThreads);
 
 		for (int i = 0; i < nrThreads; i++) {
-			workerThreads[i] = new WorkerThread(i, sorted, nrItems / nrThreads, itemsToAdd, itemsToRemove, workTime, barrier, debug);
+			if (intSorted != null) {
+				workerThreads[i] = new WorkerThread(i, intSorted, nrItems / nrThreads, itemsToAdd, itemsToRemove, workTime, readPercentage, batchSize, barrier, debug);
+			} else {
+				workerThreads[i] = new WorkerThread(i, sorted, nrItems / nrThreads, itemsToAdd, itemsToRemove, workTime, readPercentage, batchSize, barrier, debug);
+			}
 		}
 
 		long start = System.currentTimeMillis();
-		for (int i = 0; i < nrThreads; i++) {
-			workerThreads[i].start();
-		}
+		Execution execution = new Execution(virtual);
+		execution.start(workerThreads);
 
-		for (int i = 0; i < nrThreads; i++) {
-			workerThreads[i].join();
-		}
+		execution.join();
 		long end = System.currentTimeMillis();
 
 		if (debug) {
 		System.out.println("data structure after removal (should be empty):");
-		String st = sorted.toString();
+		Object structure = intSorted != null ? intSorted : sorted;
+		String st = structure.toString();
 		if (st.length() >= 0) {
-			System.out.println(sorted);
+			System.out.println(structure);
 		}
+		System.out.printf("size: %d\n", intSorted != null ? intSorted.size() : sorted.size());
+		System.out.printf("execution: %s\n", execution);
 		System.out.println();
 		System.out.printf("time: %d ms\n\n", end - start);
 		} else {
 		System.out.println(end - start);
 		}
+
+		if (Metrics.isEnabled()) {
+			System.out.print(Metrics.report());
+		}
 	}
 
-	private static void performWork(String dataStructure, int nrThreads, int nrItems, int workTime, long seed, boolean debug, int innerWorkTime) throws InterruptedException {
-		Sorted<Integer> sorted = null;
+	// Prefills the structure and generates every worker's operations before
+	// the clock starts, so only the replay itself is timed
+	private static void startStreams(Sorted<Integer> sorted, IntSorted intSorted, Workload workload, boolean doubles, int nrThreads, int nrItems, int workTime, long seed, boolean virtual, boolean debug) throws InterruptedException {
+		OperationStream[] streams = prepareStreams(sorted, intSorted, workload, doubles, nrThreads, nrItems, seed);
+		WorkerThread[] workerThreads = createStreamWorkers(sorted, intSorted, streams, workTime, null, debug);
+
+		long start = System.currentTimeMillis();
+		Execution execution = new Execution(virtual);
+		execution.start(workerThreads);
 
-		boolean doubles = true;
+		execution.join();
+		long end = System.currentTimeMillis();
 
+		if (debug) {
+			System.out.printf("workload: %s\n", workload);
+			System.out.printf("size: %d\n", intSorted != null ? intSorted.size() : sorted.size());
+			System.out.printf("execution: %s\n", execution);
+			System.out.println();
+			System.out.printf("time: %d ms\n\n", end - start);
+		} else {
+			System.out.println(end - start);
+		}
+
+		if (Metrics.isEnabled()) {
+			System.out.print(Metrics.report());
+		}
+	}
+
+	// Runs the workload for duration milliseconds, timed from the moment all
+	// workers are released, and returns what they completed
+	private static Throughput measureThroughput(Sorted<Integer> sorted, IntSorted intSorted, Workload workload, boolean doubles, int nrThreads, int nrItems, int workTime, long duration, long seed, boolean virtual, boolean debug) throws InterruptedException {
+		OperationStream[] streams = prepareStreams(sorted, intSorted, workload, doubles, nrThreads, nrItems, seed);
+		Throughput throughput = new Throughput(nrThreads);
+		WorkerThread[] workerThreads = createStreamWorkers(sorted, intSorted, streams, workTime, throughput, debug);
+
+		Execution execution = new Execution(virtual);
+		execution.start(workerThreads);
+		throughput.start();
+		long start = System.nanoTime();
+		Thread.sleep(duration);
+		throughput.stop();
+
+		execution.join();
+		throughput.setElapsedNanos(System.nanoTime() - start);
+		if (debug) {
+			System.out.printf("execution: %s\n", execution);
+		}
+		return throughput;
+	}
+
+	private static void startDuration(Sorted<Integer> sorted, IntSorted intSorted, Workload workload, boolean doubles, int nrThreads, int nrItems, int workTime, long duration, long seed, boolean virtual, boolean debug) throws InterruptedException {
+		Throughput throughput = measureThroughput(sorted, intSorted, workload, doubles, nrThreads, nrItems, workTime, duration, seed, virtual, debug);
+
+		if (debug) {
+			System.out.printf("workload: %s\n", workload);
+			System.out.printf("size: %d\n", intSorted != null ? intSorted.size() : sorted.size());
+			System.out.println();
+		}
+		System.out.printf("throughput: %.0f ops/s (%d ops in %d ms)\n", throughput.totalOpsPerSecond(), throughput.totalCount(), throughput.elapsedMillis());
+		for (int i = 0; i < nrThreads; i++) {
+			System.out.printf("  thread %d: %.0f ops/s\n", i, throughput.opsPerSecond(i));
+		}
+		System.out.printf("fairness: %.3f (Jain's index), slowest/fastest thread: %.3f\n", throughput.fairness(),
+				throughput.maxOpsPerSecond() == 0 ? 1.0 : throughput.minOpsPerSecond() / throughput.maxOpsPerSecond());
+
+		if (Metrics.isEnabled()) {
+			System.out.print(Metrics.report());
+		}
+	}
+
+	/*
+	 * Measures every structure in dataStructures at 1 to maxThreads threads,
+	 * each on a fresh instance, and prints one CSV row per measurement.
+	 */
+	private static void performSweep(String[] dataStructures, int maxThreads, int nrItems, int workTime, Workload workload, long duration, long seed, boolean virtual, int innerWorkTime) throws InterruptedException {
+		for (String dataStructure : dataStructures) {
+			if (createSorted(dataStructure, innerWorkTime, 1, 0) == null && createIntSorted(dataStructure, innerWorkTime) == null) {
+				exitWithError();
+			}
+		}
+		System.out.println("structure,threads,ops_per_sec,min_thread_ops_per_sec,max_thread_ops_per_sec,fairness");
+		for (String dataStructure : dataStructures) {
+			for (int nrThreads = 1; nrThreads <= maxThreads; nrThreads++) {
+				Sorted<Integer> sorted = createSorted(dataStructure, innerWorkTime, nrThreads, workload.keyRange(Math.max(nrItems, nrThreads)));
+				IntSorted intSorted = createIntSorted(dataStructure, innerWorkTime);
+				Throughput throughput = measureThroughput(sorted, intSorted, workload, allowsDoubles(dataStructure), nrThreads, Math.max(nrItems, nrThreads), workTime, duration, seed, virtual, false);
+				System.out.printf(Locale.ROOT, "%s,%d,%.0f,%.0f,%.0f,%.4f\n", dataStructure, nrThreads, throughput.totalOpsPerSecond(),
+						throughput.minOpsPerSecond(), throughput.maxOpsPerSecond(), throughput.fairness());
+			}
+		}
+	}
+
+	private static OperationStream[] prepareStreams(Sorted<Integer> sorted, IntSorted intSorted, Workload workload, boolean doubles, int nrThreads, int nrItems, long seed) {
+		for (int key : workload.prefillKeys(nrItems, doubles, seed)) {
+			if (intSorted != null) {
+				intSorted.add(key);
+			} else {
+				sorted.add(key);
+			}
+		}
+		OperationStream[] streams = workload.generate(nrThreads, nrItems / nrThreads, nrItems, doubles, seed + 1);
+		if (Metrics.isEnabled()) {
+			Metrics.reset(); // leave the prefill out of the report
+		}
+		return streams;
+	}
+
+	private static WorkerThread[] createStreamWorkers(Sorted<Integer> sorted, IntSorted intSorted, OperationStream[] streams, int workTime, Throughput throughput, boolean debug) {
+		WorkerThread[] workerThreads = new WorkerThread[streams.length];
+		for (int i = 0; i < streams.length; i++) {
+			if (intSorted != null) {
+				workerThreads[i] = new WorkerThread(i, intSorted, streams[i], workTime, throughput, debug);
+			} else {
+				workerThreads[i] = new WorkerThread(i, sorted, streams[i], workTime, throughput, debug);
+			}
+		}
+		return workerThreads;
+	}
+
+	// Returns the Sorted implementation selected by dataStructure, or null if
+	// it names an IntSorted implementation or nothing at all. Keys are
+	// expected in [0, keyRange), or anywhere if keyRange is 0.
+	public static Sorted<Integer> createSorted(String dataStructure, int innerWorkTime, int nrThreads, int keyRange) {
+		int colon = dataStructure.indexOf(':');
+		if (colon >= 0) {
+			return createFineGrained(dataStructure.substring(0, colon), LockStrategy.parse(dataStructure.substring(colon + 1)), innerWorkTime, nrThreads);
+		}
 		if (dataStructure.equals(CGL)) {
-			sorted = new CoarseGrainedList<Integer>(innerWorkTime);
+			return new CoarseGrainedList<Integer>(innerWorkTime);
 		} else if (dataStructure.equals(CGT)) {
-			sorted = new CoarseGrainedTree<Integer>(innerWorkTime);
+			return new CoarseGrainedTree<Integer>(innerWorkTime);
 		} else if (dataStructure.equals(FGL)) {
-			sorted = new FineGrainedList<Integer>(innerWorkTime);
+			return new FineGrainedList<Integer>(innerWorkTime);
 		} else if (dataStructure.equals(FGT)) {
-			sorted = new FineGrainedTree<Integer>(innerWorkTime);
+			return new FineGrainedTree<Integer>(innerWorkTime);
 		} else if (dataStructure.equals(LFL)) {
-			sorted = new LockFreeList<Integer>(innerWorkTime);
+			return new LockFreeList<Integer>(innerWorkTime);
 		} else if (dataStructure.equals(LFT)) {
-			sorted = new LockFreeTree<Integer>(innerWorkTime);
-			doubles = false;
+			return new LockFreeTree<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(OPL)) {
+			return new OptimisticList<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(LZL)) {
+			return new LazyList<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(LZS)) {
+			return new LazySkipList<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(LFS)) {
+			return new LockFreeSkipList<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(AVL)) {
+			return new AVLTree<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(FCL)) {
+			return new FlatCombiningSorted<Integer>(new CoarseGrainedList<Integer>(innerWorkTime), nrThreads);
+		} else if (dataStructure.equals(FCT)) {
+			return new FlatCombiningSorted<Integer>(new CoarseGrainedTree<Integer>(innerWorkTime), nrThreads);
+		} else if (dataStructure.equals(SCL)) {
+			return createSharded(nrThreads, keyRange, () -> new CoarseGrainedList<Integer>(innerWorkTime));
+		} else if (dataStructure.equals(SCT)) {
+			return createSharded(nrThreads, keyRange, () -> new CoarseGrainedTree<Integer>(innerWorkTime));
+		} else if (dataStructure.equals(CWT)) {
+			return new CopyOnWriteTree<Integer>(innerWorkTime);
+		} else if (dataStructure.equals(ADA)) {
+			return new AdaptiveSorted<Integer>(() -> new CoarseGrainedTree<Integer>(innerWorkTime),
+					() -> new FineGrainedTree<Integer>(innerWorkTime));
+		} else if (dataStructure.equals(BLT)) {
+			return new BLinkTree(innerWorkTime);
+		}
+		return createFineGrained(dataStructure, LockStrategy.REENTRANT, innerWorkTime, nrThreads);
+	}
+
+	// fgl, fgt, efl or eft with the given node lock, as in "fgl:spin"; null
+	// for anything else
+	private static Sorted<Integer> createFineGrained(String dataStructure, LockStrategy locking, int innerWorkTime, int nrThreads) {
+		if (locking == null) {
+			return null;
+		} else if (dataStructure.equals(FGL)) {
+			return new FineGrainedList<Integer>(innerWorkTime, locking);
+		} else if (dataStructure.equals(FGT)) {
+			return new FineGrainedTree<Integer>(innerWorkTime, locking);
+		} else if (dataStructure.equals(EFL)) {
+			return new EliminationSorted<Integer>(new FineGrainedList<Integer>(innerWorkTime, locking), nrThreads);
+		} else if (dataStructure.equals(EFT)) {
+			return new EliminationSorted<Integer>(new FineGrainedTree<Integer>(innerWorkTime, locking), nrThreads);
+		}
+		return null;
+	}
+
+	// One shard per thread, unless the key range is too small for that
+	private static Sorted<Integer> createSharded(int nrThreads, int keyRange, Supplier<Sorted<Integer>> newShard) {
+		if (keyRange == 0) {
+			return ShardedSorted.ofRange(nrThreads, Integer.MIN_VALUE, Integer.MAX_VALUE, newShard);
+		}
+		return ShardedSorted.ofRange(Math.min(nrThreads, keyRange), 0, keyRange, newShard);
+	}
+
+	// Returns the IntSorted implementation selected by dataStructure, or null
+	public static IntSorted createIntSorted(String dataStructure, int innerWorkTime) {
+		if (dataStructure.equals(ICGL)) {
+			return new IntCoarseGrainedList(innerWorkTime);
+		} else if (dataStructure.equals(ICGT)) {
+			return new IntCoarseGrainedTree(innerWorkTime);
+		} else if (dataStructure.equals(IFGL)) {
+			return new IntFineGrainedList(innerWorkTime);
+		} else if (dataStructure.equals(IFGT)) {
+			return new IntFineGrainedTree(innerWorkTime);
+		} else if (dataStructure.equals(OCGT)) {
+			return new OffHeapCoarseGrainedTree(innerWorkTime);
+		} else if (dataStructure.equals(IBLT)) {
+			return new BLinkTree(innerWorkTime);
+		}
+		return null;
+	}
+
+	// LockFreeTree stores every key once, so it is fed unique keys
+	public static boolean allowsDoubles(String dataStructure) {
+		return !dataStructure.equals(LFT);
+	}
+
+	private static void performWork(String dataStructure, int nrThreads, int nrItems, int workTime, int readPercentage, int batchSize, boolean sortedKeys, Workload workload, long duration, int metrics, long seed, boolean virtual, boolean debug, int innerWorkTime) throws InterruptedException {
+		boolean doubles = allowsDoubles(dataStructure);
+		int keyRange;
+		if (duration > 0 || workload.isEnabled()) {
+			keyRange = workload.keyRange(nrItems);
 		} else {
+			keyRange = doubles && !sortedKeys ? 0 : nrItems; // see createWorkData
+		}
+
+		Sorted<Integer> sorted = createSorted(dataStructure, innerWorkTime, nrThreads, keyRange);
+		IntSorted intSorted = createIntSorted(dataStructure, innerWorkTime);
+
+		if (sorted == null && intSorted == null) {
 			exitWithError();
 		}
 
+		if (metrics != NO_METRICS) {
+			Metrics.enable();
+			if (sorted != null) {
+				sorted = new MeasuredSorted<Integer>(sorted);
+			}
+			if (metrics == JMX_METRICS) {
+				Metrics.registerMBean();
+			}
+		}
+
 		if (debug) {
-    	    	    System.out.printf("Output before adding:\n%s\n", sorted.toString());
+    	    	    System.out.printf("Output before adding:\n%s\n", intSorted != null ? intSorted : sorted);
 		}
 
-		startThreads(sorted, nrThreads, nrItems, workTime, seed, doubles, debug);
+		if (duration > 0) {
+			startDuration(sorted, intSorted, workload, doubles, nrThreads, nrItems, workTime, duration, seed, virtual, debug);
+		} else if (workload.isEnabled()) {
+			startStreams(sorted, intSorted, workload, doubles, nrThreads, nrItems, workTime, seed, virtual, debug);
+		} else {
+			startThreads(sorted, intSorted, nrThreads, nrItems, workTime, readPercentage, batchSize, seed, doubles, sortedKeys, virtual, debug);
+		}
 	}
 
 	private static void exitWithError() {
-		System.out .println("test_data_structures <data_structure> <nrThreads> <nrItems> <workTime> [debug]");
+		System.out.println("test_data_structures <data_structure> <nrThreads> <nrItems> <workTime> <innerWorkTime> [reads=<percentage>] [keys=<order>] [batch=<size>] [dist=<distribution>] [range=<n>] [prefill=<n>] [mix=<a>:<r>:<c>] [duration=<ms>] [sweep] [exec=<mode>] [carriers=<n>] [metrics[=jmx]] [debug]");
 		System.out.println("  where:");
-		System.out.printf("    <data_structure> in {%s, %s, %s, %s, %s, %s}\n", CGL, CGT, FGL, FGT, LFL, LFT);
+		System.out.printf("    <data_structure> in {%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s}\n", CGL, CGT, FGL, FGT, LFL, LFT, OPL, LZL, LZS, LFS, AVL, FCL, FCT, SCL, SCT, CWT, EFL, EFT, ADA, BLT);
+		System.out.printf("                      or {%s, %s, %s, %s, %s, %s} for the unboxed int variants\n", ICGL, ICGT, IFGL, IFGT, OCGT, IBLT);
+		System.out.printf("                      %s, %s, %s and %s take a node lock suffix:\n", FGL, FGT, EFL, EFT);
+		System.out.println("                      :reentrant (default), :spin, :ticket or :stamped");
 		System.out.println("    <nrThreads> is a number > 0");
 		System.out.println("    <nrItems> is a number > 0");
 		System.out.println("    <workTime> is a number >= 0 (micro seconds)");
 		System.out.println("    <innerWorkTime> is a number >= 0 (micro seconds)");
+		System.out.println("    [reads=<percentage>] can be omitted. Percentage (0-99) of all");
+		System.out.println("            operations that are contains() lookups; default 0.");
+		System.out.println("    [keys=<order>] can be omitted. <order> in {random, sorted}; sorted");
+		System.out.println("            feeds every thread ascending keys; default random.");
+		System.out.println("    [batch=<size>] can be omitted. Workers sort their items in chunks");
+		System.out.println("            of <size> and apply them with addAll/removeAll; default 1.");
+		System.out.println("    [dist=<distribution>] [range=<n>] [prefill=<n>] [mix=<a>:<r>:<c>]");
+		System.out.println("            can be omitted. Any of them switches to a mixed workload:");
+		System.out.println("            <prefill> distinct keys are added first (default 0, or");
+		System.out.printf("            <range>/2 for %s, which keeps no duplicates), then every thread\n", LFT);
+		System.out.println("            does <nrItems>/<nrThreads> operations, <a>% add, <r>% remove");
+		System.out.println("            and <c>% contains (default 50:50:0), on keys in [0, <range>)");
+		System.out.println("            (default <nrItems>). Elsewhere removes take keys that the");
+		System.out.println("            thread added earlier, so with <a> = <r> the size stays at");
+		System.out.println("            <prefill>. <distribution> in {uniform, sequential,");
+		System.out.println("            zipf[:<theta>], hotspot[:<key%>:<op%>]}; default uniform,");
+		System.out.println("            zipf theta 0.99, hotspot 10% of keys get 90% of operations.");
+		System.out.println("            reads, keys and batch do not apply to a mixed workload.");
+		System.out.println("    [duration=<ms>] can be omitted. Replays the mixed workload in a loop");
+		System.out.println("            for <ms> milliseconds once every worker is ready and reports");
+		System.out.println("            total and per-thread operations per second and fairness.");
+		System.out.println("    [sweep] can be omitted. Runs the duration mode at 1 to <nrThreads>");
+		System.out.println("            threads and prints CSV; <data_structure> may then be a");
+		System.out.println("            comma-separated list, e.g. cgl,cgt,fgl,fgt. Default");
+		System.out.println("            duration 1000 ms.");
+		System.out.println("    [exec=<mode>] can be omitted. <mode> in {platform, virtual}; virtual");
+		System.out.println("            runs every worker as a virtual thread (Java 21+), so");
+		System.out.println("            <nrThreads> may far exceed the core count; default platform.");
+		System.out.println("            With metrics, the lock line shows what blocking costs");
+		System.out.println("            (parked virtual threads) and any pinning is traced.");
+		System.out.println("    [carriers=<n>] can be omitted. Carrier threads for exec=virtual;");
+		System.out.println("            default the number of cores.");
+		System.out.println("    [metrics[=jmx]] can be omitted. metrics prints a report after the");
+		System.out.println("            run: latency percentiles per operation, lock acquisitions");
+		System.out.println("            and the time blocked on contended ones, nodes traversed and");
+		System.out.println("            CAS retries. metrics=jmx also registers the counters as the");
+		System.out.println("            MXBean data_structures:type=Metrics while the run lasts.");
 		System.out.println("    [debug] can be omitted. If added as the last parameter,");
 		System.out.println("            the output of Sorted.toString() will be printed ");
 		System.out.println("            after adding and before removing the numbers.");
 		System.exit(1);
 	}
 
+	private static boolean parseWorkloadOption(Workload workload, String arg) {
+		try {
+			return workload.parseOption(arg);
+		} catch (IllegalArgumentException e) {
+			System.out.printf("%s: %s\n\n", arg, e.getMessage());
+			exitWithError();
+			return false;
+		}
+	}
+
 	public static void main(String[] args) throws InterruptedException {
-		if (args.length < 5 || args.length > 6) {
+		if (args.length < 5) {
 			exitWithError();
 		}
 
@@ -185,18 +529,71 @@ public class Main {
 		}
 		
 		boolean debug = false;
-		if (args.length == 6) {
-			System.out.println(args[5]);
-			if (args[5].equals("debug")) {
+		int readPercentage = 0;
+		boolean sortedKeys = false;
+		int batchSize = 1;
+		int metrics = NO_METRICS;
+		Workload workload = new Workload();
+		long duration = 0;
+		boolean sweep = false;
+		boolean virtual = false;
+		for (int i = 5; i < args.length; i++) {
+			if (args[i].equals("debug")) {
 				debug = true;
-			} else {
-				System.out.println("last argument should be 'debug', or be omitted\n");
-				System.exit(1);
+			} else if (args[i].startsWith("reads=")) {
+				readPercentage = Integer.parseInt(args[i].substring("reads=".length()));
+				if (readPercentage < 0 || readPercentage >= 100) {
+					exitWithError();
+				}
+			} else if (args[i].startsWith("batch=")) {
+				batchSize = Integer.parseInt(args[i].substring("batch=".length()));
+				if (batchSize < 1) {
+					exitWithError();
+				}
+			} else if (args[i].equals("metrics")) {
+				metrics = PRINT_METRICS;
+			} else if (args[i].equals("metrics=jmx")) {
+				metrics = JMX_METRICS;
+			} else if (args[i].equals("keys=sorted")) {
+				sortedKeys = true;
+			} else if (args[i].equals("keys=random")) {
+				sortedKeys = false;
+			} else if (args[i].startsWith("duration=")) {
+				duration = Long.parseLong(args[i].substring("duration=".length()));
+				if (duration < 1) {
+					exitWithError();
+				}
+			} else if (args[i].equals("sweep")) {
+				sweep = true;
+			} else if (args[i].equals("exec=virtual")) {
+				virtual = true;
+			} else if (args[i].equals("exec=platform")) {
+				virtual = false;
+			} else if (args[i].startsWith("carriers=")) {
+				int carriers = Integer.parseInt(args[i].substring("carriers=".length()));
+				if (carriers < 1) {
+					exitWithError();
+				}
+				Execution.setCarriers(carriers);
+			} else if (!parseWorkloadOption(workload, args[i])) {
+				System.out.printf("unknown option '%s'\n\n", args[i]);
+				exitWithError();
 			}
 		}
 
 		long seed = computeSeed(nrThreads, nrItems, workTime);
 
-		performWork(dataStructure, nrThreads, nrItems, workTime, seed, debug, innerWorkTime);
+		if (virtual && !Execution.virtualThreadsAvailable()) {
+			System.err.println("virtual threads need Java 21 or later; running platform threads");
+		} else if (virtual && metrics != NO_METRICS) {
+			Execution.tracePinning();
+		}
+
+		if (sweep) {
+			performSweep(dataStructure.split(","), nrThreads, nrItems, workTime, workload, duration > 0 ? duration : 1000, seed, virtual, innerWorkTime);
+			return;
+		}
+
+		performWork(dataStructure, nrThreads, nrItems, workTime, readPercentage, batchSize, sortedKeys, workload, duration, metrics, seed, virtual, debug, innerWorkTime);
 	}
 }
@@ -0,0 +1,45 @@
+package data_structures;
+
+import java.util.function.BiFunction;
+
+/*
+ * Concurrent map from Comparable keys to values, in key order. Keys are
+ * unique and values may not be null; null as a result means no mapping.
+ * Every operation is atomic on its own, so callers need no outer lock
+ * to update a value in place.
+ */
+public interface OrderedMap<K extends Comparable<K>, V> {
+
+	// Returns the previous value of key, or null
+	public V put(K key, V value);
+
+	public V get(K key);
+
+	// Returns the removed value, or null
+	public V remove(K key);
+
+	/*
+	 * Maps key to value unless it already has a value. Returns that value,
+	 * or null if value was stored.
+	 */
+	public V putIfAbsent(K key, V value);
+
+	/*
+	 * If key has a value, replaces it by f(key, value), or removes key if
+	 * that is null. Returns the new value, or null. f must not call back
+	 * into the map and may be called more than once.
+	 */
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> f);
+
+	// The greatest key <= key, or null
+	public K floor(K key);
+
+	// The least key >= key, or null
+	public K ceiling(K key);
+
+	/*
+	 * Number of keys. Only exact when no other thread is modifying the map
+	 * at the same time.
+	 */
+	public int size();
+}
@@ -1,6 +1,54 @@
 package data_structures;
 
-public interface Sorted<T extends Comparable<T>> {
+import java.util.Iterator;
+import java.util.List;
+
+public interface Sorted<T extends Comparable<T>> extends Iterable<T> {
 	public void add(T t);
 	public void remove(T t);
+
+	/*
+	 * Lookups never take the exclusive lock that add and remove use, so they
+	 * may run in parallel with each other and, in the fine-grained and
+	 * lock-free structures, with updates as well.
+	 */
+	public boolean contains(T t);
+
+	/*
+	 * Number of elements. Only exact when no other thread is modifying the
+	 * structure at the same time.
+	 */
+	public int size();
+
+	/*
+	 * Batch versions of add and remove; ts must be in ascending order. The
+	 * lists override these to merge the whole batch in one traversal.
+	 * Elements of a batch are not added or removed atomically as a group.
+	 */
+	public default void addAll(List<T> ts) {
+		for (T t : ts) {
+			add(t);
+		}
+	}
+
+	public default void removeAll(List<T> ts) {
+		for (T t : ts) {
+			remove(t);
+		}
+	}
+
+	/*
+	 * The elements t with from <= t < to in ascending order, duplicates
+	 * included; a null bound is unbounded. The coarse-grained structures
+	 * copy the range out under a read lock. The others walk the live
+	 * structure without locking and are weakly consistent: they return
+	 * every element present for the whole walk, none that was absent for
+	 * the whole walk, and may or may not return those added or removed
+	 * while it is under way. Iterators do not support remove().
+	 */
+	public Iterator<T> range(T from, T to);
+
+	public default Iterator<T> iterator() {
+		return range(null, null);
+	}
 }
@@ -0,0 +1,124 @@
+package data_structures;
+
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * Completed-operation counters for a duration run, one per worker thread.
+ * Every counter sits PADDING longs away from its neighbours (and from the
+ * array header), so workers bumping their own counters never write to a
+ * cache line that another worker's counter is on.
+ *
+ * The run starts through two latches rather than a barrier: the main thread
+ * waits until every worker is ready and then opens the gate without ever
+ * blocking itself, so it cannot be starved by virtual-thread workers that
+ * occupy every carrier and never park.
+ */
+class Throughput {
+
+	// 128 bytes: two lines, so the adjacent-line prefetcher cannot pair them up
+	private static final int PADDING = 16;
+
+	private final int nrThreads;
+	private final long[] counts;
+	private final CountDownLatch ready;
+	private final CountDownLatch started = new CountDownLatch(1);
+	private volatile boolean stopped;
+	private long elapsedNanos;
+
+	Throughput(int nrThreads) {
+		this.nrThreads = nrThreads;
+		this.counts = new long[(nrThreads + 2) * PADDING];
+		this.ready = new CountDownLatch(nrThreads);
+	}
+
+	// Called by every worker before its first operation
+	void awaitStart() throws InterruptedException {
+		ready.countDown();
+		started.await();
+	}
+
+	// Called by the main thread; returns once all workers have been released
+	void start() throws InterruptedException {
+		ready.await();
+		started.countDown();
+	}
+
+	// Only ever called by thread itself; read once the workers are joined
+	void increment(int thread) {
+		counts[(thread + 1) * PADDING]++;
+	}
+
+	boolean isStopped() {
+		return stopped;
+	}
+
+	void stop() {
+		stopped = true;
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	int nrThreads() {
+		return nrThreads;
+	}
+
+	long count(int thread) {
+		return counts[(thread + 1) * PADDING];
+	}
+
+	long totalCount() {
+		long total = 0;
+		for (int i = 0; i < nrThreads; i++) {
+			total += count(i);
+		}
+		return total;
+	}
+
+	double opsPerSecond(int thread) {
+		return count(thread) * 1e9 / elapsedNanos;
+	}
+
+	double totalOpsPerSecond() {
+		return totalCount() * 1e9 / elapsedNanos;
+	}
+
+	long elapsedMillis() {
+		return elapsedNanos / 1000000;
+	}
+
+	/*
+	 * Jain's fairness index over the per-thread counts: 1 when every thread
+	 * completed the same number of operations, 1/nrThreads when one thread
+	 * did all of them.
+	 */
+	double fairness() {
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (int i = 0; i < nrThreads; i++) {
+			double x = count(i);
+			sum += x;
+			sumOfSquares += x * x;
+		}
+		return sumOfSquares == 0 ? 1 : sum * sum / (nrThreads * sumOfSquares);
+	}
+
+	// Of the slowest thread
+	double minOpsPerSecond() {
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < nrThreads; i++) {
+			min = Math.min(min, count(i));
+		}
+		return min * 1e9 / elapsedNanos;
+	}
+
+	// Of the fastest thread
+	double maxOpsPerSecond() {
+		long max = 0;
+		for (int i = 0; i < nrThreads; i++) {
+			max = Math.max(max, count(i));
+		}
+		return max * 1e9 / elapsedNanos;
+	}
+}
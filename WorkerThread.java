@@ -1,40 +1,98 @@
 package data_structures;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.BrokenBarrierException;
 
+import data_structures.workload.OperationStream;
+import data_structures.workload.Workload;
+
 public class WorkerThread extends Thread {
+
+	// In ints: 128 bytes, as in Throughput
+	private static final int PADDING = 32;
+	private static final int READ_CREDIT = PADDING;
+	private static final int READ_INDEX = PADDING + 1;
+
 	private int id;
 	private int nrIterations;
 	private Sorted<Integer> sorted;
+	private IntSorted intSorted;
 	private int[] itemsToAdd;
 	private int[] itemsToRemove;
 	private int workTime;
+	private int readPercentage;
+	// readCredit and readIndex, written on every operation, in the middle of
+	// a padded array so that no other worker's state shares their lines
+	private int[] reads;
+	private int batchSize;
+	private int[] batch;
+	private List<Integer> boxedBatch;
+	private OperationStream stream;
+	private Throughput throughput;
 	private boolean doWork;
 	private boolean doDebug;
 	private CyclicBarrier barrier;
 	
-	WorkerThread(int id, Sorted<Integer> list, int nrIterations, int[] itemsToAdd, int[] itemsToRemove, int workTime, CyclicBarrier barrier, boolean debug) {
+	WorkerThread(int id, Sorted<Integer> list, int nrIterations, int[] itemsToAdd, int[] itemsToRemove, int workTime, int readPercentage, int batchSize, CyclicBarrier barrier, boolean debug) {
 		this.sorted = list;
 		this.id = id;
 		this.nrIterations = nrIterations;
 		this.itemsToAdd = itemsToAdd;
 		this.itemsToRemove = itemsToRemove;
 		this.workTime = workTime;
+		this.readPercentage = readPercentage;
+		this.batchSize = batchSize;
 		this.doWork = workTime > 0;
 		this.barrier = barrier;
 		this.doDebug = debug;
 	}
 
+	// Drives an IntSorted directly from the int arrays, without boxing
+	WorkerThread(int id, IntSorted list, int nrIterations, int[] itemsToAdd, int[] itemsToRemove, int workTime, int readPercentage, int batchSize, CyclicBarrier barrier, boolean debug) {
+		this(id, (Sorted<Integer>) null, nrIterations, itemsToAdd, itemsToRemove, workTime, readPercentage, batchSize, barrier, debug);
+		this.intSorted = list;
+	}
+
+	// Replays a pre-generated operation stream instead of the add/remove
+	// phases. With a throughput, the worker waits for the run to start and
+	// then cycles through the stream until the run is stopped.
+	WorkerThread(int id, Sorted<Integer> list, OperationStream stream, int workTime, Throughput throughput, boolean debug) {
+		this(id, list, 0, null, null, workTime, 0, 1, null, debug);
+		this.stream = stream;
+		this.throughput = throughput;
+	}
+
+	WorkerThread(int id, IntSorted list, OperationStream stream, int workTime, Throughput throughput, boolean debug) {
+		this(id, list, 0, null, null, workTime, 0, 1, null, debug);
+		this.stream = stream;
+		this.throughput = throughput;
+	}
+
 	public void run() {
+		allocateState();
+		if (stream != null) {
+			if (intSorted != null) {
+				replay(intSorted);
+			} else {
+				replay(sorted);
+			}
+			return;
+		}
 		int startIndex = nrIterations * id;
-		add(sorted, startIndex, nrIterations, itemsToAdd);
+		if (intSorted != null) {
+			add(intSorted, startIndex, nrIterations, itemsToAdd);
+		} else {
+			add(sorted, startIndex, nrIterations, itemsToAdd);
+		}
 
 		try {
 		    barrier.await();
 		    if (this.doDebug) {
 		    	    if (this.id == 0) {
-		    	    	    System.out.printf("Output after adding, before removing:\n%s\n", sorted.toString());
+		    	    	    System.out.printf("Output after adding, before removing:\n%s\n", intSorted != null ? intSorted : sorted);
 		    	    }
 		    	    barrier.await();
 		    }
@@ -46,20 +104,222 @@ public class WorkerThread extends Thread {
 		    e.printStackTrace();
 		}
 
-		remove(sorted, startIndex, nrIterations, itemsToRemove);
+		if (intSorted != null) {
+			remove(intSorted, startIndex, nrIterations, itemsToRemove);
+		} else {
+			remove(sorted, startIndex, nrIterations, itemsToRemove);
+		}
 	}
 
 	private void remove(Sorted<Integer> sorted, int startIndex, int nrIterations, int[] itemsToRemove) {
+		if (batchSize > 1) {
+			removeBatches(sorted, startIndex, nrIterations, itemsToRemove);
+			return;
+		}
 		for (int i = startIndex; i < startIndex + nrIterations; i++) {
 			doWork();
 			sorted.remove(itemsToRemove[i]);
+			doReads(sorted);
 		}
 	}
 
 	private void add(Sorted<Integer> sorted, int startIndex, int nrIterations, int[] itemsToAdd) {
+		if (batchSize > 1) {
+			addBatches(sorted, startIndex, nrIterations, itemsToAdd);
+			return;
+		}
 		for (int i = startIndex; i < startIndex + nrIterations; i++) {
 			doWork();
 			sorted.add(itemsToAdd[i]);
+			doReads(sorted);
+		}
+	}
+
+	private void removeBatches(Sorted<Integer> sorted, int startIndex, int nrIterations, int[] itemsToRemove) {
+		for (int i = startIndex; i < startIndex + nrIterations; i += batchSize) {
+			int len = fillBatch(itemsToRemove, i, Math.min(batchSize, startIndex + nrIterations - i));
+			boxBatch(len);
+			sorted.removeAll(boxedBatch);
+			for (int j = 0; j < len; j++) {
+				doReads(sorted);
+			}
+		}
+	}
+
+	private void addBatches(Sorted<Integer> sorted, int startIndex, int nrIterations, int[] itemsToAdd) {
+		for (int i = startIndex; i < startIndex + nrIterations; i += batchSize) {
+			int len = fillBatch(itemsToAdd, i, Math.min(batchSize, startIndex + nrIterations - i));
+			boxBatch(len);
+			sorted.addAll(boxedBatch);
+			for (int j = 0; j < len; j++) {
+				doReads(sorted);
+			}
+		}
+	}
+
+	// Interleaves lookups with the updates so that readPercentage percent of
+	// all operations are contains() calls
+	private void doReads(Sorted<Integer> sorted) {
+		reads[READ_CREDIT] += readPercentage;
+		while (reads[READ_CREDIT] >= 100 - readPercentage) {
+			reads[READ_CREDIT] -= 100 - readPercentage;
+			doWork();
+			sorted.contains(itemsToAdd[reads[READ_INDEX]]);
+			reads[READ_INDEX] = (reads[READ_INDEX] + 1) % itemsToAdd.length;
+		}
+	}
+
+	private void remove(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToRemove) {
+		if (batchSize > 1) {
+			removeBatches(sorted, startIndex, nrIterations, itemsToRemove);
+			return;
+		}
+		for (int i = startIndex; i < startIndex + nrIterations; i++) {
+			doWork();
+			sorted.remove(itemsToRemove[i]);
+			doReads(sorted);
+		}
+	}
+
+	private void add(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToAdd) {
+		if (batchSize > 1) {
+			addBatches(sorted, startIndex, nrIterations, itemsToAdd);
+			return;
+		}
+		for (int i = startIndex; i < startIndex + nrIterations; i++) {
+			doWork();
+			sorted.add(itemsToAdd[i]);
+			doReads(sorted);
+		}
+	}
+
+	private void removeBatches(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToRemove) {
+		for (int i = startIndex; i < startIndex + nrIterations; i += batchSize) {
+			int len = fillBatch(itemsToRemove, i, Math.min(batchSize, startIndex + nrIterations - i));
+			sorted.removeAll(batch, 0, len);
+			for (int j = 0; j < len; j++) {
+				doReads(sorted);
+			}
+		}
+	}
+
+	private void addBatches(IntSorted sorted, int startIndex, int nrIterations, int[] itemsToAdd) {
+		for (int i = startIndex; i < startIndex + nrIterations; i += batchSize) {
+			int len = fillBatch(itemsToAdd, i, Math.min(batchSize, startIndex + nrIterations - i));
+			sorted.addAll(batch, 0, len);
+			for (int j = 0; j < len; j++) {
+				doReads(sorted);
+			}
+		}
+	}
+
+	private void doReads(IntSorted sorted) {
+		reads[READ_CREDIT] += readPercentage;
+		while (reads[READ_CREDIT] >= 100 - readPercentage) {
+			reads[READ_CREDIT] -= 100 - readPercentage;
+			doWork();
+			sorted.contains(itemsToAdd[reads[READ_INDEX]]);
+			reads[READ_INDEX] = (reads[READ_INDEX] + 1) % itemsToAdd.length;
+		}
+	}
+
+	private void replay(Sorted<Integer> sorted) {
+		int length = stream.ops.length;
+		if (throughput == null) {
+			for (int i = 0; i < length; i++) {
+				apply(sorted, stream.ops[i], stream.keys[i]);
+			}
+			return;
+		}
+		awaitStart();
+		for (int i = 0; !throughput.isStopped(); i = i + 1 < length ? i + 1 : 0) {
+			apply(sorted, stream.ops[i], stream.keys[i]);
+			throughput.increment(id);
+		}
+	}
+
+	private void replay(IntSorted sorted) {
+		int length = stream.ops.length;
+		if (throughput == null) {
+			for (int i = 0; i < length; i++) {
+				apply(sorted, stream.ops[i], stream.keys[i]);
+			}
+			return;
+		}
+		awaitStart();
+		for (int i = 0; !throughput.isStopped(); i = i + 1 < length ? i + 1 : 0) {
+			apply(sorted, stream.ops[i], stream.keys[i]);
+			throughput.increment(id);
+		}
+	}
+
+	private void apply(Sorted<Integer> sorted, byte op, int key) {
+		doWork();
+		switch (op) {
+		case Workload.ADD:
+			sorted.add(key);
+			break;
+		case Workload.REMOVE:
+			sorted.remove(key);
+			break;
+		default:
+			sorted.contains(key);
+		}
+	}
+
+	private void apply(IntSorted sorted, byte op, int key) {
+		doWork();
+		switch (op) {
+		case Workload.ADD:
+			sorted.add(key);
+			break;
+		case Workload.REMOVE:
+			sorted.remove(key);
+			break;
+		default:
+			sorted.contains(key);
+		}
+	}
+
+	/*
+	 * Allocates the state that the worker writes as it goes from the
+	 * worker's own thread, so that it lands in that thread's allocation
+	 * buffer rather than next to the other workers' state, which the main
+	 * thread allocated back to back.
+	 */
+	private void allocateState() {
+		reads = new int[2 * PADDING + 2];
+		reads[READ_INDEX] = nrIterations * id;
+		if (batchSize > 1) {
+			batch = new int[batchSize];
+			boxedBatch = new ArrayList<Integer>(batchSize);
+		}
+	}
+
+	private void awaitStart() {
+		try {
+			throughput.awaitStart();
+		}
+		catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Copies the next len items into batch, sorted, doing the per-item work
+	// that the single-item loops do before each operation
+	private int fillBatch(int[] items, int from, int len) {
+		for (int j = 0; j < len; j++) {
+			doWork();
+			batch[j] = items[from + j];
+		}
+		Arrays.sort(batch, 0, len);
+		return len;
+	}
+
+	private void boxBatch(int len) {
+		boxedBatch.clear();
+		for (int j = 0; j < len; j++) {
+			boxedBatch.add(batch[j]);
 		}
 	}
 
@@ -0,0 +1,83 @@
+package data_structures.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Cost of false sharing for the per-thread state that Throughput and
+ * WorkerThread keep in padded arrays. Every thread increments its own
+ * counter in one shared long[]; stride is the distance between two
+ * threads' counters in longs. At stride 1 eight threads write to every
+ * cache line, at 8 each has a line of its own, and at 16, what Throughput
+ * uses, the adjacent-line prefetcher cannot pair lines up either.
+ *
+ * The difference only shows with many cores writing at once, e.g.
+ *
+ *   java -cp <classpath> data_structures.benchmark.PaddingBenchmark -t 16 -prof perfnorm
+ *
+ * and again with -t 32 and -t 64; perfnorm reports the cache misses per
+ * increment that make up the coherence traffic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@Threads(4)
+public class PaddingBenchmark {
+
+	// more threads than any benchmark run uses
+	private static final int MAX_THREADS = 256;
+
+	@Param({ "1", "8", "16" })
+	public int stride;
+
+	private long[] counters;
+	private AtomicInteger nrThreads = new AtomicInteger();
+
+	@Setup
+	public void allocate() {
+		counters = new long[(MAX_THREADS + 2) * stride];
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private int index = -1;
+	}
+
+	@Benchmark
+	public long increment(ThreadState state) {
+		if (state.index < 0) {
+			state.index = (nrThreads.getAndIncrement() + 1) * stride;
+		}
+		return ++counters[state.index];
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(PaddingBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
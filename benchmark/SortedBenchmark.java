@@ -0,0 +1,179 @@
+package data_structures.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import data_structures.Main;
+import data_structures.Sorted;
+
+/*
+ * JMH benchmark of every Sorted implementation that Main can select.
+ *
+ * Each iteration starts from a fresh structure holding half of the key
+ * range (the even keys). Every thread then does contains() for
+ * readPercentage percent of its operations and otherwise an add or a
+ * remove with equal probability. duplicatePercentage is the share of adds
+ * that insert an even key, which is already present. A remove takes back
+ * a random one of the last HELD keys its thread added, and a thread that
+ * holds none adds instead, one that holds HELD removes instead; so every
+ * remove of a multiset hits and the size stays within threads * HELD of
+ * keyRange / 2, however long an iteration runs.
+ *
+ * Throughput and SampleTime (latency percentiles) are both reported. The
+ * thread count is a JMH option, not a parameter: sweep it with -t, e.g.
+ *
+ *   java -cp <classpath> data_structures.benchmark.SortedBenchmark -t 4 -p structure=fgl,lfl
+ *
+ * main() always adds the GC profiler, which reports allocation per
+ * operation (the same as passing -prof gc). With readPercentage 0 half of
+ * the operations are adds, so for fgl and fgt that figure tracks the size
+ * of a node; compare the node locks with e.g.
+ *
+ *   -p structure=fgl,fgl:spin,fgl:ticket,fgl:stamped -p readPercentage=0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@Threads(4)
+public class SortedBenchmark {
+
+	@Param({ "cgl", "cgt", "fgl", "fgt", "lfl", "lft", "opl", "lzl", "lzs", "lfs", "avl", "fcl", "fct", "scl", "sct", "cwt", "efl", "eft", "ada", "blt" })
+	public String structure;
+
+	@Param({ "1024", "65536" })
+	public int keyRange;
+
+	@Param({ "0", "50", "90" })
+	public int readPercentage;
+
+	@Param({ "0" })
+	public int duplicatePercentage;
+
+	@Param({ "0" })
+	public int innerWorkTime;
+
+	private Sorted<Integer> sorted;
+
+	@Setup(Level.Iteration)
+	public void fill() {
+		// more threads than any benchmark run uses, for FlatCombiningSorted's
+		// slots; the sharded structures get one shard per assumed thread
+		sorted = Main.createSorted(structure, innerWorkTime, 256, keyRange);
+		if (sorted == null) {
+			throw new IllegalArgumentException("not a Sorted implementation: " + structure);
+		}
+		// insert in a scrambled order so the unbalanced trees stay shallow
+		int half = keyRange / 2;
+		int step = half / 2 + 1;
+		while (gcd(step, half) != 1) {
+			step++;
+		}
+		for (int i = 0, j = 0; i < half; i++, j = (j + step) % half) {
+			sorted.add(2 * j);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		private static final int HELD = 16;
+
+		private long seed = System.nanoTime() | 1;
+		// keys this thread added and has not removed yet
+		private int[] held = new int[HELD];
+		private int nrHeld;
+
+		// the structure is new in every iteration
+		@Setup(Level.Iteration)
+		public void forget() {
+			nrHeld = 0;
+		}
+
+		// xorshift; cheaper than Random and shares nothing between threads
+		int next(int bound) {
+			seed ^= seed << 13;
+			seed ^= seed >>> 7;
+			seed ^= seed << 17;
+			return (int) ((seed >>> 1) % bound);
+		}
+
+		boolean mustAdd() {
+			return nrHeld == 0;
+		}
+
+		boolean mustRemove() {
+			return nrHeld == HELD;
+		}
+
+		void hold(int key) {
+			held[nrHeld++] = key;
+		}
+
+		// One of the held keys, chosen at random, which is no longer held
+		int release() {
+			int i = next(nrHeld);
+			int key = held[i];
+			held[i] = held[--nrHeld];
+			return key;
+		}
+	}
+
+	@Benchmark
+	public boolean operation(ThreadState state) {
+		int key = state.next(keyRange);
+		if (state.next(100) < readPercentage) {
+			return sorted.contains(key);
+		}
+		boolean add = state.next(2) == 0;
+		if (state.mustAdd() || state.mustRemove()) {
+			add = state.mustAdd();
+		}
+		if (add) {
+			if (!Main.allowsDoubles(structure) || state.next(100) >= duplicatePercentage) {
+				key |= 1;
+			} else {
+				key &= ~1;
+			}
+			sorted.add(key);
+			state.hold(key);
+		} else {
+			sorted.remove(state.release());
+		}
+		return true;
+	}
+
+	private static int gcd(int a, int b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(SortedBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,277 @@
+package data_structures.implementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import data_structures.Sorted;
+
+/*
+ * Height-balanced (AVL) binary search tree. Updates rebalance on the way
+ * back up, so the depth stays below 1.44 log2(n) whatever order the keys
+ * arrive in, unlike CoarseGrainedTree which degenerates into a list on
+ * sorted input. Updates are serialized by the write mode of a StampedLock;
+ * lookups first descend under an optimistic read stamp and only take the
+ * read lock if a writer got in the way.
+ */
+public class AVLTree<T extends Comparable<T>> implements Sorted<T> {
+
+	// far above the height of any tree that fits in memory
+	private static final int MAX_HEIGHT = 128;
+
+	private volatile Node root;
+	private StampedLock lock = new StampedLock();
+	private int size;
+	private boolean removed;
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public AVLTree(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		long stamp = lock.writeLock();
+		try {
+			doWork();
+			root = insert(root, t);
+			size++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public void remove(T t) {
+		long stamp = lock.writeLock();
+		try {
+			doWork();
+			removed = false;
+			root = delete(root, t);
+			if (removed) {
+				size--;
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public boolean contains(T t) {
+		boolean found;
+		long stamp = lock.tryOptimisticRead();
+		found = search(t);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				found = search(t);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		doWork();
+		return found;
+	}
+
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/*
+	 * May run concurrently with a writer when called optimistically, so it
+	 * must not fail or loop forever on a half-rotated tree; the caller
+	 * discards the result if the stamp does not validate.
+	 */
+	private boolean search(T t) {
+		Node curr = root;
+		int cmp;
+		for (int depth = 0; curr != null && depth < MAX_HEIGHT; depth++) {
+			cmp = t.compareTo(curr.value);
+			if (cmp == 0) {
+				return true;
+			}
+			curr = cmp < 0 ? curr.left : curr.right;
+		}
+		return false;
+	}
+
+	private Node insert(Node node, T t) {
+		if (node == null) {
+			return new Node(t);
+		}
+		if (t.compareTo(node.value) < 0) {
+			node.left = insert(node.left, t);
+		} else {
+			node.right = insert(node.right, t);
+		}
+		return balance(node);
+	}
+
+	private Node delete(Node node, T t) {
+		if (node == null) {
+			return null;
+		}
+		int cmp = t.compareTo(node.value);
+		if (cmp < 0) {
+			node.left = delete(node.left, t);
+		} else if (cmp > 0) {
+			node.right = delete(node.right, t);
+		} else {
+			removed = true;
+			if (node.left == null) {
+				return node.right;
+			} else if (node.right == null) {
+				return node.left;
+			}
+			Node minOfRight = node.right;
+			while (minOfRight.left != null) {
+				minOfRight = minOfRight.left;
+			}
+			minOfRight.right = deleteMin(node.right);
+			minOfRight.left = node.left;
+			node = minOfRight;
+		}
+		return balance(node);
+	}
+
+	private Node deleteMin(Node node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		node.left = deleteMin(node.left);
+		return balance(node);
+	}
+
+	private Node balance(Node node) {
+		updateHeight(node);
+		int factor = height(node.left) - height(node.right);
+		if (factor > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		} else if (factor < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	private Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		updateHeight(node);
+		updateHeight(left);
+		return left;
+	}
+
+	private Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		updateHeight(node);
+		updateHeight(right);
+		return right;
+	}
+
+	private int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private void updateHeight(Node node) {
+		node.height = 1 + Math.max(height(node.left), height(node.right));
+	}
+
+	/*
+	 * Copies the range out under an optimistic stamp and, if a writer got
+	 * in the way, once more under the read lock, so writers are held up
+	 * for at most one copy.
+	 */
+	public Iterator<T> range(T from, T to) {
+		List<T> keys = new ArrayList<T>();
+		long stamp = lock.tryOptimisticRead();
+		if (stamp == 0 || !collect(from, to, keys, stamp)) {
+			keys.clear();
+			stamp = lock.readLock();
+			try {
+				collect(from, to, keys, 0);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return Collections.unmodifiableList(keys).iterator();
+	}
+
+	/*
+	 * Appends the keys in [from, to) to keys in order. With a nonzero
+	 * optimistic stamp, gives up and returns false as soon as the stamp
+	 * stops validating, which also keeps it from looping on a half-rotated
+	 * tree.
+	 */
+	private boolean collect(T from, T to, List<T> keys, long stamp) {
+		ArrayDeque<Node> path = new ArrayDeque<Node>();
+		Node curr = root;
+		while (true) {
+			while (curr != null) {
+				if (stamp != 0 && !lock.validate(stamp)) {
+					return false;
+				}
+				if (from != null && curr.value.compareTo(from) < 0) {
+					curr = curr.right;
+				} else {
+					path.push(curr);
+					curr = curr.left;
+				}
+			}
+			if (path.isEmpty()) {
+				break;
+			}
+			curr = path.pop();
+			if (to != null && curr.value.compareTo(to) >= 0) {
+				break;
+			}
+			keys.add(curr.value);
+			curr = curr.right;
+		}
+		return stamp == 0 || lock.validate(stamp);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		public T value;
+		public volatile Node left;
+		public volatile Node right;
+		public int height = 1;
+
+		Node(T v) {
+			value = v;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package data_structures.implementation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import data_structures.Sorted;
+
+/*
+ * Switches between a coarse-grained and a fine-grained (or lock-free)
+ * representation depending on how much the operations contend. It starts
+ * coarse, which costs one lock per operation when there is little
+ * concurrency.
+ *
+ * The coarse representation must be Contended, i.e. count the lock
+ * acquisitions that had to wait. One operation in SAMPLE_RATE is sampled,
+ * and after every WINDOW samples, about WINDOW * SAMPLE_RATE operations,
+ * the share of operations that waited for the coarse lock in that window
+ * decides: above upThreshold the structure migrates to the fine
+ * representation. Operations that merely run at the same time, such as
+ * readers sharing a read lock, do not count.
+ *
+ * On the fine representation there is no coarse lock to watch. Instead,
+ * every operation registers in one of a set of padded in-flight counters
+ * while it runs, and a sampled operation sums them to see whether any
+ * other is in flight. When the share of sampled operations that
+ * overlapped another falls below downThreshold, the structure migrates
+ * back: an operation can only wait for the coarse lock while another one
+ * holds it, so the coarse representation would then wait less than
+ * downThreshold as well, and a downThreshold below upThreshold keeps it
+ * from flapping.
+ *
+ * A migration stops new operations at the gate, waits for the counters
+ * to drain, copies the quiescent old structure into a new one with
+ * addAll(), which builds the trees balanced, and reopens the gate. So
+ * every operation runs entirely on one representation and no update is
+ * lost. The copy is O(n) and operations wait for it. An iterator
+ * obtained before a migration keeps walking the old, now frozen
+ * representation, which still satisfies range()'s weak consistency.
+ */
+public class AdaptiveSorted<T extends Comparable<T>> implements Sorted<T> {
+
+	private static final int ADD = 0;
+	private static final int REMOVE = 1;
+	private static final int CONTAINS = 2;
+
+	private static final int STRIPES = 32;
+	// 16 longs: two cache lines per counter
+	private static final int PADDING = 16;
+	private static final int SAMPLE_RATE = 64;
+	private static final int WINDOW = 256;
+
+	private Supplier<Sorted<T>> newCoarse;
+	private Supplier<Sorted<T>> newFine;
+	private double upThreshold;
+	private double downThreshold;
+
+	private volatile Sorted<T> current;
+	private volatile boolean fine;
+	private AtomicLongArray inFlight = new AtomicLongArray((STRIPES + 2) * PADDING);
+	private volatile boolean migrating;
+	private Lock migration = new ReentrantLock();
+	private LongAdder migrations = new LongAdder();
+
+	// the current window
+	private LongAdder samples = new LongAdder();
+	private LongAdder overlapped = new LongAdder();
+	private long windowStartWaits; // lockWaits() of the coarse structure, read by decide()
+	private AtomicBoolean deciding = new AtomicBoolean();
+	private volatile double contention;
+	private volatile double overlap;
+
+	public AdaptiveSorted(Supplier<Sorted<T>> newCoarse, Supplier<Sorted<T>> newFine) {
+		this(newCoarse, newFine, 0.1, 0.05);
+	}
+
+	/*
+	 * upThreshold is a share of operations that waited for the coarse
+	 * lock, downThreshold one of sampled operations that overlapped
+	 * another; downThreshold must be below upThreshold. newCoarse must
+	 * supply Contended structures.
+	 */
+	public AdaptiveSorted(Supplier<Sorted<T>> newCoarse, Supplier<Sorted<T>> newFine, double upThreshold, double downThreshold) {
+		if (downThreshold >= upThreshold) {
+			throw new IllegalArgumentException("downThreshold must be below upThreshold");
+		}
+		this.newCoarse = newCoarse;
+		this.newFine = newFine;
+		this.upThreshold = upThreshold;
+		this.downThreshold = downThreshold;
+		this.current = newCoarse.get();
+		if (!(current instanceof Contended)) {
+			throw new IllegalArgumentException("the coarse structure does not count its lock waits");
+		}
+	}
+
+	public void add(T t) {
+		apply(ADD, t);
+	}
+
+	public void remove(T t) {
+		apply(REMOVE, t);
+	}
+
+	public boolean contains(T t) {
+		return apply(CONTAINS, t);
+	}
+
+	public int size() {
+		int stripe = enter();
+		try {
+			return current.size();
+		} finally {
+			exit(stripe);
+		}
+	}
+
+	public void addAll(List<T> ts) {
+		int stripe = enter();
+		try {
+			current.addAll(ts);
+		} finally {
+			exit(stripe);
+		}
+	}
+
+	public void removeAll(List<T> ts) {
+		int stripe = enter();
+		try {
+			current.removeAll(ts);
+		} finally {
+			exit(stripe);
+		}
+	}
+
+	public Iterator<T> range(T from, T to) {
+		int stripe = enter();
+		try {
+			return current.range(from, to);
+		} finally {
+			exit(stripe);
+		}
+	}
+
+	// Whether the fine representation is in use
+	public boolean isFine() {
+		return fine;
+	}
+
+	public long migrations() {
+		return migrations.sum();
+	}
+
+	// Share of operations that waited for the coarse lock, over the last coarse window
+	public double contention() {
+		return contention;
+	}
+
+	// Share of sampled operations that overlapped another, over the last window
+	public double overlap() {
+		return overlap;
+	}
+
+	private boolean apply(int op, T t) {
+		boolean sampled = ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+		boolean found = false;
+		int stripe = enter();
+		try {
+			if (sampled && sumInFlight() > 1) {
+				overlapped.increment();
+			}
+			Sorted<T> sorted = current;
+			if (op == ADD) {
+				sorted.add(t);
+			} else if (op == REMOVE) {
+				sorted.remove(t);
+			} else {
+				found = sorted.contains(t);
+			}
+			if (sampled) {
+				samples.increment();
+			}
+		} finally {
+			exit(stripe);
+		}
+		if (sampled && samples.sum() >= WINDOW) {
+			decide();
+		}
+		return found;
+	}
+
+	/*
+	 * Counts the caller in, unless a migration is under way; then it waits
+	 * for the migration to finish and tries again.
+	 */
+	private int enter() {
+		int stripe = (Thread.currentThread().hashCode() & Integer.MAX_VALUE) % STRIPES;
+		int index = (stripe + 1) * PADDING;
+		while (true) {
+			inFlight.incrementAndGet(index);
+			if (!migrating) {
+				return index;
+			}
+			inFlight.decrementAndGet(index);
+			migration.lock(); // held by the migrating thread
+			migration.unlock();
+		}
+	}
+
+	private void exit(int index) {
+		inFlight.decrementAndGet(index);
+	}
+
+	private long sumInFlight() {
+		long sum = 0;
+		for (int i = 1; i <= STRIPES; i++) {
+			sum += inFlight.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	// Run by one thread at a time, outside the gate
+	private void decide() {
+		if (!deciding.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long n = samples.sum();
+			if (n < WINDOW) {
+				return; // someone else just decided
+			}
+			overlap = (double) overlapped.sum() / n;
+			samples.reset();
+			overlapped.reset();
+			if (!fine) {
+				// about n * SAMPLE_RATE operations ran in this window
+				long waits = ((Contended) current).lockWaits();
+				contention = Math.min(1.0, (double) (waits - windowStartWaits) / (n * SAMPLE_RATE));
+				windowStartWaits = waits;
+				if (contention > upThreshold) {
+					migrate(newFine.get());
+				}
+			} else if (overlap < downThreshold) {
+				migrate(newCoarse.get());
+				windowStartWaits = 0;
+			}
+		} finally {
+			deciding.set(false);
+		}
+	}
+
+	private void migrate(Sorted<T> next) {
+		migration.lock();
+		try {
+			migrating = true;
+			for (int i = 1; i <= STRIPES; i++) {
+				while (inFlight.get(i * PADDING) != 0) {
+					Thread.onSpinWait();
+				}
+			}
+			List<T> all = new ArrayList<T>();
+			for (T t : current) {
+				all.add(t);
+			}
+			next.addAll(all);
+			current = next;
+			fine = !fine;
+			migrations.increment();
+		} finally {
+			migrating = false;
+			migration.unlock();
+		}
+	}
+
+	public String toString() {
+		return current.toString();
+	}
+}
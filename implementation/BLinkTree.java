@@ -0,0 +1,428 @@
+package data_structures.implementation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+import data_structures.IntSorted;
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+/*
+ * B+-tree with right links (Lehman and Yao) over int keys. A node holds up
+ * to fanout keys in a sorted int[], so a lookup reads a few cache lines
+ * per level instead of chasing one pointer per key, and the tree has
+ * about log_fanout(n) levels. Duplicates are a count next to the key in
+ * the leaf, as in LockFreeSkipList.
+ *
+ * Every node has a version that a writer makes odd while it holds the
+ * node. Readers take no locks: they read a node between two reads of its
+ * version and retry that node if the version changed. Every node knows
+ * the upper bound of its key range (high) and its right sibling, and a
+ * split only ever moves the upper part of a node's range to a new right
+ * sibling. So a reader that arrives at a node too late, or a writer that
+ * finds the range moved on, just follows the right links; nobody goes
+ * back to the root.
+ *
+ * Updates lock only the leaf. A full node is split under its own lock,
+ * the lock is released and then the separator is added to the parent
+ * level, which may split in turn; meanwhile the new node is reachable
+ * through its left sibling's right link. Nodes are not merged: a leaf
+ * emptied by removes stays in the chain until keys in its range arrive
+ * again.
+ */
+public class BLinkTree implements Sorted<Integer>, IntSorted {
+
+	private static final VarHandle VERSION;
+
+	static {
+		try {
+			VERSION = MethodHandles.lookup().findVarHandle(Node.class, "version", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// 64 ints, four cache lines of keys per node
+	public static final int DEFAULT_FANOUT = 64;
+	// high of the rightmost node on every level; above any int
+	private static final long UNBOUNDED = Long.MAX_VALUE;
+
+	private int fanout;
+	private volatile Node root;
+	private LongAdder size = new LongAdder();
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public BLinkTree(int innerWorkTime) {
+		this(innerWorkTime, DEFAULT_FANOUT);
+	}
+
+	public BLinkTree(int innerWorkTime, int fanout) {
+		if (fanout < 3) {
+			throw new IllegalArgumentException("fanout must be at least 3");
+		}
+		this.fanout = fanout;
+		this.root = new Node(0, fanout);
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(Integer t) {
+		add(t.intValue());
+	}
+
+	public void remove(Integer t) {
+		remove(t.intValue());
+	}
+
+	public boolean contains(Integer t) {
+		return contains(t.intValue());
+	}
+
+	public void add(int t) {
+		Node leaf = lockLeaf(t);
+		doWork();
+		size.increment();
+		int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, t);
+		if (i >= 0) {
+			leaf.counts[i]++;
+			unlock(leaf);
+		} else if (leaf.count < fanout) {
+			insertAt(leaf, -i - 1, t, null);
+			unlock(leaf);
+		} else {
+			split(leaf, -i - 1, t, null);
+		}
+	}
+
+	public void remove(int t) {
+		Node leaf = lockLeaf(t);
+		try {
+			doWork();
+			int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, t);
+			if (i < 0) {
+				return;
+			}
+			size.decrement();
+			if (--leaf.counts[i] == 0) {
+				int moved = leaf.count - i - 1;
+				System.arraycopy(leaf.keys, i + 1, leaf.keys, i, moved);
+				System.arraycopy(leaf.counts, i + 1, leaf.counts, i, moved);
+				leaf.count--;
+			}
+		} finally {
+			unlock(leaf);
+		}
+	}
+
+	public boolean contains(int t) {
+		Node leaf = find(t, 0);
+		while (true) {
+			long version = stableVersion(leaf);
+			if (t >= leaf.high) {
+				Node next = leaf.right;
+				if (validate(leaf, version)) {
+					leaf = next;
+				}
+				continue;
+			}
+			boolean found = Arrays.binarySearch(leaf.keys, 0, leaf.count, t) >= 0;
+			if (validate(leaf, version)) {
+				doWork();
+				return found;
+			}
+			Metrics.casRetry();
+		}
+	}
+
+	public int size() {
+		return size.intValue();
+	}
+
+	/*
+	 * Walks the leaf chain, copying out one leaf at a time while its
+	 * version stays the same. It continues with the right sibling the leaf
+	 * had at that moment and only takes keys from the copied leaf's high
+	 * on, so keys that a split has moved since are neither missed nor
+	 * returned twice.
+	 */
+	public Iterator<Integer> range(Integer from, Integer to) {
+		return new RangeIterator(from == null ? Integer.MIN_VALUE : from, to == null ? UNBOUNDED : to);
+	}
+
+	/*
+	 * Descends without locking to the node on level whose range holds key,
+	 * or to one left of it on the same level.
+	 */
+	private Node find(int key, int level) {
+		int hops = 0;
+		Node node = root;
+		while (node.level > level) {
+			long version = stableVersion(node);
+			Node next = key >= node.high ? node.right : node.children[childIndex(node, key)];
+			if (validate(node, version)) {
+				node = next;
+				hops++;
+			} else {
+				Metrics.casRetry();
+			}
+		}
+		Metrics.traversed(hops);
+		return node;
+	}
+
+	// The leaf whose range holds key, locked
+	private Node lockLeaf(int key) {
+		Node leaf = find(key, 0);
+		lock(leaf);
+		return moveRight(leaf, key);
+	}
+
+	// Follows right links from the locked node to the one whose range holds key
+	private static Node moveRight(Node node, int key) {
+		while (key >= node.high) {
+			Node next = node.right;
+			lock(next);
+			unlock(node);
+			node = next;
+		}
+		return node;
+	}
+
+	// Adds the separator key of the new node child to the level above it
+	private void insertSeparator(int level, int key, Node child) {
+		Node node = find(key, level);
+		lock(node);
+		node = moveRight(node, key);
+		int i = childIndex(node, key);
+		if (node.count < fanout) {
+			insertAt(node, i, key, child);
+			unlock(node);
+		} else {
+			split(node, i, key, child);
+		}
+	}
+
+	// Inserts key, and in an inner node child right of it, at i; node is locked and not full
+	private static void insertAt(Node node, int i, int key, Node child) {
+		int moved = node.count - i;
+		System.arraycopy(node.keys, i, node.keys, i + 1, moved);
+		node.keys[i] = key;
+		if (node.level == 0) {
+			System.arraycopy(node.counts, i, node.counts, i + 1, moved);
+			node.counts[i] = 1;
+		} else {
+			System.arraycopy(node.children, i + 1, node.children, i + 2, moved);
+			node.children[i + 1] = child;
+		}
+		node.count++;
+	}
+
+	/*
+	 * Moves the upper half of the locked, full node to a new right sibling,
+	 * inserts key (and child) at i as insertAt() would, then unlocks node
+	 * and adds the separator to the parent level. If node is the root, a
+	 * new root is installed before node is unlocked, so the top level never
+	 * has more than one node.
+	 */
+	private void split(Node node, int i, int key, Node child) {
+		Node sibling = new Node(node.level, fanout);
+		int mid = fanout / 2;
+		int separator;
+		if (node.level == 0) {
+			sibling.count = node.count - mid;
+			System.arraycopy(node.keys, mid, sibling.keys, 0, sibling.count);
+			System.arraycopy(node.counts, mid, sibling.counts, 0, sibling.count);
+			separator = sibling.keys[0];
+		} else {
+			// keys[mid] moves up and the children right of it to the sibling
+			sibling.count = node.count - mid - 1;
+			System.arraycopy(node.keys, mid + 1, sibling.keys, 0, sibling.count);
+			System.arraycopy(node.children, mid + 1, sibling.children, 0, sibling.count + 1);
+			Arrays.fill(node.children, mid + 1, node.count + 1, null);
+			separator = node.keys[mid];
+		}
+		node.count = mid;
+		sibling.high = node.high;
+		sibling.right = node.right;
+		node.high = separator;
+		node.right = sibling;
+		// separators are unique, so key is on one side of separator
+		if (key < separator) {
+			insertAt(node, i, key, child);
+		} else {
+			insertAt(sibling, i - (node.level == 0 ? mid : mid + 1), key, child);
+		}
+		boolean wasRoot = node == root;
+		if (wasRoot) {
+			Node newRoot = new Node(node.level + 1, fanout);
+			newRoot.keys[0] = separator;
+			newRoot.children[0] = node;
+			newRoot.children[1] = sibling;
+			newRoot.count = 1;
+			root = newRoot;
+		}
+		unlock(node);
+		if (!wasRoot) {
+			insertSeparator(node.level + 1, separator, sibling);
+		}
+	}
+
+	// Index of the child whose range holds key: the number of keys <= key
+	private static int childIndex(Node node, int key) {
+		int low = 0;
+		int high = node.count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (node.keys[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	// Waits until no writer holds node and returns its version
+	private static long stableVersion(Node node) {
+		long version = node.version;
+		int spins = 0;
+		while ((version & 1) != 0) {
+			pause(++spins);
+			version = node.version;
+		}
+		return version;
+	}
+
+	// Whether node was left alone since version was read; callers count a failure as a CAS retry
+	private static boolean validate(Node node, long version) {
+		VarHandle.acquireFence();
+		return node.version == version;
+	}
+
+	private static void lock(Node node) {
+		long version = node.version;
+		if ((version & 1) == 0 && VERSION.compareAndSet(node, version, version + 1)) {
+			Metrics.acquired();
+			return;
+		}
+		long start = System.nanoTime();
+		int spins = 0;
+		do {
+			pause(++spins);
+			version = node.version;
+		} while ((version & 1) != 0 || !VERSION.compareAndSet(node, version, version + 1));
+		Metrics.acquired(start);
+	}
+
+	private static void unlock(Node node) {
+		VERSION.setRelease(node, node.version + 1);
+	}
+
+	// As in LockableNode
+	private static void pause(int spins) {
+		if ((spins & 1023) == 0) {
+			Thread.yield();
+		} else {
+			Thread.onSpinWait();
+		}
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (int t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class RangeIterator implements Iterator<Integer> {
+		private long from;
+		private long to;
+		private Node leaf; // the next leaf to copy, null after the last
+		private int[] keys = new int[fanout];
+		private int[] counts = new int[fanout];
+		private int n;
+		private int index;
+
+		RangeIterator(int from, long to) {
+			this.from = from;
+			this.to = to;
+			this.leaf = find(from, 0);
+		}
+
+		// Copies leaves until one has keys in [from, to) or none are left
+		private void fill() {
+			while (index == n && leaf != null) {
+				long version = stableVersion(leaf);
+				int count = leaf.count;
+				System.arraycopy(leaf.keys, 0, keys, 0, count);
+				System.arraycopy(leaf.counts, 0, counts, 0, count);
+				long high = leaf.high;
+				Node right = leaf.right;
+				if (!validate(leaf, version)) {
+					Metrics.casRetry();
+					continue;
+				}
+				n = 0;
+				index = 0;
+				for (int i = 0; i < count; i++) {
+					if (keys[i] >= from && keys[i] < to) {
+						keys[n] = keys[i];
+						counts[n++] = counts[i];
+					}
+				}
+				from = Math.max(from, high);
+				leaf = high < to ? right : null;
+			}
+		}
+
+		public boolean hasNext() {
+			fill();
+			return index < n;
+		}
+
+		public Integer next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int key = keys[index];
+			if (--counts[index] == 0) {
+				index++;
+			}
+			return key;
+		}
+	}
+
+	private static class Node {
+		final int level; // 0 for leaves
+		final int[] keys;
+		final int[] counts; // leaves: copies of each key
+		final Node[] children; // inner nodes: children[i] holds keys[i - 1] <= k < keys[i]
+		int count;
+		long high = UNBOUNDED; // keys >= high are right of this node
+		Node right;
+		volatile long version; // odd while a writer holds the node
+
+		Node(int level, int fanout) {
+			this.level = level;
+			this.keys = new int[fanout];
+			this.counts = level == 0 ? new int[fanout] : null;
+			this.children = level == 0 ? null : new Node[fanout + 1];
+		}
+	}
+}
@@ -1,14 +1,23 @@
 package data_structures.implementation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import data_structures.Sorted;
+import data_structures.metrics.Metrics;
 
-public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
+public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T>, Contended {
 
 	private Node head;
-	private Lock lock = new ReentrantLock();
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private LongAdder lockWaits = new LongAdder();
+	private int size;
 	private int innerWorkTime;
 	private boolean doInnerWork;
 	
@@ -18,8 +27,9 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 	}
 
 	public void add(T t) {
+		int hops = 0;
 		Node pred, curr;
-		lock.lock();
+		acquire(lock.writeLock());
 		try {
 			if (head == null) {
 				head = new Node(t, null);
@@ -32,56 +42,179 @@ public class CoarseGrainedList<T extends Comparable<T>> implements Sorted<T> {
 				while (curr != null && t.compareTo(curr.key) >= 0) {
 					pred = curr;
 					curr = curr.next;
+					hops++;
 				}
+				Metrics.traversed(hops);
 				doWork();
 				pred.next = new Node(t, curr);
 			}
+			size++;
 		} finally {
-			lock.unlock();
+			lock.writeLock().unlock();
 		}
 	}
 
 	public void remove(T t) {
+		int hops = 0;
 		if (head == null) return;
 		Node pred, curr;
-		lock.lock();
+		acquire(lock.writeLock());
 		try {
 			pred = curr = head;
 			while (curr != null && t.compareTo(curr.key) > 0) {
 				pred = curr;
 				curr = curr.next;
+				hops++;
 			}
+			Metrics.traversed(hops);
 			doWork();
 			if (curr == null) return;
 			if (t.compareTo(curr.key) == 0) {
-				pred.next = curr.next;
+				if (curr == head) {
+					head = curr.next;
+				} else {
+					pred.next = curr.next;
+				}
+				size--;
 			}
 		} finally {
-			lock.unlock();
+			lock.writeLock().unlock();
 		}
 	}
 
-	public String toString() {
+	public boolean contains(T t) {
+		int hops = 0;
+		Node curr;
+		acquire(lock.readLock());
+		try {
+			curr = head;
+			while (curr != null && t.compareTo(curr.key) > 0) {
+				curr = curr.next;
+				hops++;
+			}
+			Metrics.traversed(hops);
+			doWork();
+			return curr != null && t.compareTo(curr.key) == 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		acquire(lock.readLock());
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
 
-		String str = "[";
+	/*
+	 * Takes the write lock once and merges the sorted batch into the list
+	 * in a single traversal.
+	 */
+	public void addAll(List<T> ts) {
+		Node pred = null;
 		Node curr;
-		if (head == null) {
-			return "[]";
+		acquire(lock.writeLock());
+		try {
+			curr = head;
+			for (T t : ts) {
+				while (curr != null && t.compareTo(curr.key) >= 0) {
+					pred = curr;
+					curr = curr.next;
+				}
+				doWork();
+				Node newNode = new Node(t, curr);
+				if (pred == null) {
+					head = newNode;
+				} else {
+					pred.next = newNode;
+				}
+				pred = newNode;
+				size++;
+			}
+		} finally {
+			lock.writeLock().unlock();
 		}
-		curr = head;
-		while (curr.next != null) {
-			str += curr.key; // add element to string
-			str += ", ";
-			curr = curr.next;
+	}
+
+	public void removeAll(List<T> ts) {
+		Node pred = null;
+		Node curr;
+		acquire(lock.writeLock());
+		try {
+			curr = head;
+			for (T t : ts) {
+				while (curr != null && t.compareTo(curr.key) > 0) {
+					pred = curr;
+					curr = curr.next;
+				}
+				doWork();
+				if (curr != null && t.compareTo(curr.key) == 0) {
+					if (pred == null) {
+						head = curr.next;
+					} else {
+						pred.next = curr.next;
+					}
+					curr = curr.next;
+					size--;
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
 		}
-		if (str.length() > 2) {
-			String str2 = str.substring(0, str.length() - 2);
-			str = str2;
+	}
+
+	/*
+	 * Copies the range out under the read lock, so writers wait for the
+	 * copy but not for the caller to consume it.
+	 */
+	public Iterator<T> range(T from, T to) {
+		List<T> keys = new ArrayList<T>();
+		acquire(lock.readLock());
+		try {
+			Node curr = head;
+			while (curr != null && from != null && curr.key.compareTo(from) < 0) {
+				curr = curr.next;
+			}
+			while (curr != null && (to == null || curr.key.compareTo(to) < 0)) {
+				keys.add(curr.key);
+				curr = curr.next;
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
-		str += "]";
-		return str;
+		return Collections.unmodifiableList(keys).iterator();
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
 	}
 	
+	public long lockWaits() {
+		return lockWaits.sum();
+	}
+
+	// Takes l, counting the acquisition as a wait if l is already held
+	private void acquire(Lock l) {
+		if (l.tryLock()) {
+			Metrics.acquired();
+		} else {
+			lockWaits.increment();
+			long start = System.nanoTime();
+			l.lock();
+			Metrics.acquired(start);
+		}
+	}
+
 	private void doWork() {
 		if (doInnerWork) {
 			long end = System.nanoTime() + innerWorkTime * 1000;
@@ -1,15 +1,24 @@
 package data_structures.implementation;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import data_structures.Sorted;
+import data_structures.metrics.Metrics;
 
-public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
+public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T>, Contended {
 
 	private Node guard;
-	private Lock lock = new ReentrantLock();
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private LongAdder lockWaits = new LongAdder();
+	private int size;
 	private int innerWorkTime;
 	private boolean doInnerWork;
 
@@ -20,35 +29,80 @@ public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 	}
 
 	public void add(T t) {
-		Node curr, next;
-		lock.lock();
+		acquire(lock.writeLock());
+		try {
+			insert(t);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Takes the write lock once. Into an empty tree the batch is built as a
+	 * perfectly balanced tree in O(n), where adding ascending keys one by
+	 * one would make a path of them; otherwise the keys are added one by
+	 * one. ts should support fast indexed access.
+	 */
+	public void addAll(List<T> ts) {
+		acquire(lock.writeLock());
 		try {
 			if (guard.left == null) {
-				guard.left = new Node(t, null, null);
+				guard.left = build(ts, 0, ts.size());
+				size = ts.size();
 			} else {
-				curr = guard;
-				next = guard.left;
-				while (next != null) {
-					curr = next;
-					next = t.compareTo(curr.value) < 0 ? curr.left : curr.right;
-				}
-				doWork();
-				if (t.compareTo(curr.value) < 0) {
-					curr.left = new Node(t, null, null);
-				} else {
-					curr.right = new Node(t, null, null);
+				for (T t : ts) {
+					insert(t);
 				}
 			}
 		} finally {
-			lock.unlock();
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Balanced tree of ts[from..to), which is ascending
+	private Node build(List<T> ts, int from, int to) {
+		if (from == to) {
+			return null;
 		}
+		int mid = (from + to) >>> 1;
+		doWork(); // once per key, as adding it one by one would
+		return new Node(ts.get(mid), build(ts, from, mid), build(ts, mid + 1, to));
+	}
+
+	// Caller holds the write lock
+	private void insert(T t) {
+		int hops = 0;
+		Node curr, next;
+		if (guard.left == null) {
+			guard.left = new Node(t, null, null);
+		} else {
+			curr = guard;
+			next = guard.left;
+			while (next != null) {
+				curr = next;
+				next = t.compareTo(curr.value) < 0 ? curr.left : curr.right;
+				hops++;
+			}
+			Metrics.traversed(hops);
+			doWork();
+			if (t.compareTo(curr.value) < 0) {
+				curr.left = new Node(t, null, null);
+			} else {
+				curr.right = new Node(t, null, null);
+			}
+		}
+		size++;
 	}
 
 	public void remove(T t) {
+		int hops = 0;
 		Node pred, curr;
 		Boolean goLeft = true;
-		lock.lock();
+		acquire(lock.writeLock());
 		try {
+			if (guard.left == null) {
+				return;
+			}
 			pred = guard;
 			curr = guard.left;
 			if (guard.left.left == null && guard.left.right == null) {
@@ -59,11 +113,17 @@ public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 							: curr.right)) {
 				pred = curr;
 				curr = goLeft ? curr.left : curr.right;
+				hops++;
 			}
+			Metrics.traversed(hops);
 			doWork();
+			if (curr.value.compareTo(t) != 0) {
+				return;
+			}
 			removeNode(curr, pred, goLeft);
+			size--;
 		} finally {
-			lock.unlock();
+			lock.writeLock().unlock();
 		}
 	}
 
@@ -102,37 +162,95 @@ public class CoarseGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 		}
 	}
 
-	public String toString() {
-		String result = "[";
-		Stack<Node> toProcess;
-		Node currNode;
-		if (guard.left == null) {
-			// nothing
-		} else if (guard.left.left == null && guard.left.right == null) {
-			result += guard.left.value + ", ";
-		} else {
-			toProcess = new Stack<Node>();
-			currNode = guard.left;
-			toProcess.push(currNode);
-			while (currNode.left != null) {
-				currNode = currNode.left;
-				toProcess.push(currNode);
+	public boolean contains(T t) {
+		int hops = 0;
+		Node curr;
+		int cmp;
+		acquire(lock.readLock());
+		try {
+			curr = guard.left;
+			while (curr != null && (cmp = t.compareTo(curr.value)) != 0) {
+				curr = cmp < 0 ? curr.left : curr.right;
+				hops++;
 			}
-			while (!toProcess.isEmpty()) {
-				currNode = toProcess.pop();
-				result += currNode.value + ", ";
-				if (currNode.right != null) {
-					currNode = currNode.right;
-					toProcess.push(currNode);
-					while (currNode.left != null) {
-						currNode = currNode.left;
-						toProcess.push(currNode);
+			Metrics.traversed(hops);
+			doWork();
+			return curr != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		acquire(lock.readLock());
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Copies the range out under the read lock, so writers wait for the
+	 * copy but not for the caller to consume it. Subtrees entirely below
+	 * from are skipped and the walk stops at the first key >= to.
+	 */
+	public Iterator<T> range(T from, T to) {
+		List<T> keys = new ArrayList<T>();
+		ArrayDeque<Node> path = new ArrayDeque<Node>();
+		acquire(lock.readLock());
+		try {
+			Node curr = guard.left;
+			while (true) {
+				while (curr != null) {
+					if (from != null && curr.value.compareTo(from) < 0) {
+						curr = curr.right;
+					} else {
+						path.push(curr);
+						curr = curr.left;
 					}
 				}
+				if (path.isEmpty()) {
+					break;
+				}
+				curr = path.pop();
+				if (to != null && curr.value.compareTo(to) >= 0) {
+					break;
+				}
+				keys.add(curr.value);
+				curr = curr.right;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return Collections.unmodifiableList(keys).iterator();
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
 			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	public long lockWaits() {
+		return lockWaits.sum();
+	}
+
+	// Takes l, counting the acquisition as a wait if l is already held
+	private void acquire(Lock l) {
+		if (l.tryLock()) {
+			Metrics.acquired();
+		} else {
+			lockWaits.increment();
+			long start = System.nanoTime();
+			l.lock();
+			Metrics.acquired(start);
 		}
-		return (result == "[" ? result : result.substring(0,
-				result.length() - 2)) + "]";
 	}
 
 	private void doWork() {
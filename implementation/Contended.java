@@ -0,0 +1,13 @@
+package data_structures.implementation;
+
+/*
+ * A structure that counts, per instance, how often an operation found its
+ * lock held and had to wait for it. AdaptiveSorted reads it to tell real
+ * lock contention from operations that merely run at the same time, such
+ * as readers sharing a read lock.
+ */
+interface Contended {
+
+	// Lock acquisitions so far that had to wait
+	long lockWaits();
+}
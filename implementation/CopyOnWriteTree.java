@@ -0,0 +1,258 @@
+package data_structures.implementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+/*
+ * Persistent variant of CoarseGrainedTree: the same unbalanced binary
+ * search tree, but nodes are immutable. An update copies the nodes on the
+ * path from the root down to the change, O(depth) of them, and publishes
+ * the new root through an AtomicReference; everything off that path is
+ * shared with the previous version. Updates are still serialized by one
+ * lock, but readers never take it: a reader loads the root once and from
+ * then on sees a tree that nobody will ever change.
+ *
+ * snapshot() hands out such a version explicitly, so a report can make
+ * any number of contains(), size() and range() calls against one point
+ * in time while writers carry on. Each node records the size of its
+ * subtree, so size() is O(1).
+ */
+public class CopyOnWriteTree<T extends Comparable<T>> implements Sorted<T> {
+
+	private AtomicReference<Node> root = new AtomicReference<Node>();
+	private Lock lock = new ReentrantLock();
+	// scratch space for the writer that holds lock
+	private ArrayList<Node> path = new ArrayList<Node>();
+	private ArrayList<Node> spine = new ArrayList<Node>();
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public CopyOnWriteTree(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		Metrics.lock(lock);
+		try {
+			path.clear();
+			Node curr = root.get();
+			while (curr != null) {
+				path.add(curr);
+				curr = t.compareTo(curr.value) < 0 ? curr.left : curr.right;
+			}
+			Metrics.traversed(path.size());
+			doWork();
+			root.set(copyPath(t, new Node(t, null, null)));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(T t) {
+		Metrics.lock(lock);
+		try {
+			path.clear();
+			Node curr = root.get();
+			int cmp;
+			while (curr != null && (cmp = t.compareTo(curr.value)) != 0) {
+				path.add(curr);
+				curr = cmp < 0 ? curr.left : curr.right;
+			}
+			Metrics.traversed(path.size());
+			doWork();
+			if (curr != null) {
+				root.set(copyPath(t, withoutRoot(curr)));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean contains(T t) {
+		return snapshot().contains(t);
+	}
+
+	public int size() {
+		return snapshot().size();
+	}
+
+	/*
+	 * Iterates over the version current at the time of the call, so unlike
+	 * the other structures the result is exact and consistent.
+	 */
+	public Iterator<T> range(T from, T to) {
+		return snapshot().range(from, to);
+	}
+
+	/*
+	 * Returns the current version of the tree. Takes no lock and copies
+	 * nothing.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(root.get());
+	}
+
+	/*
+	 * Rebuilds the nodes in path bottom-up, replacing the child that the
+	 * search for t went to at the bottom with child, and returns the new
+	 * root. Keys equal to a node's go right, in add and remove alike.
+	 */
+	private Node copyPath(T t, Node child) {
+		for (int i = path.size() - 1; i >= 0; i--) {
+			Node node = path.get(i);
+			if (t.compareTo(node.value) < 0) {
+				child = new Node(node.value, child, node.right);
+			} else {
+				child = new Node(node.value, node.left, child);
+			}
+		}
+		return child;
+	}
+
+	/*
+	 * Returns a copy of the subtree at node without node itself. As in
+	 * CoarseGrainedTree, a node with two children is replaced by the
+	 * largest key of its left subtree; the right spine leading down to
+	 * that key is copied.
+	 */
+	private Node withoutRoot(Node node) {
+		if (node.left == null) {
+			return node.right;
+		} else if (node.right == null) {
+			return node.left;
+		}
+		spine.clear();
+		Node max = node.left;
+		while (max.right != null) {
+			spine.add(max);
+			max = max.right;
+		}
+		Node left = max.left;
+		for (int i = spine.size() - 1; i >= 0; i--) {
+			Node s = spine.get(i);
+			left = new Node(s.value, s.left, left);
+		}
+		return new Node(max.value, left, node.right);
+	}
+
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	/*
+	 * One immutable version of the tree.
+	 */
+	public class Snapshot implements Iterable<T> {
+		private final Node root;
+
+		private Snapshot(Node root) {
+			this.root = root;
+		}
+
+		public boolean contains(T t) {
+			int hops = 0;
+			Node curr = root;
+			int cmp;
+			while (curr != null && (cmp = t.compareTo(curr.value)) != 0) {
+				curr = cmp < 0 ? curr.left : curr.right;
+				hops++;
+			}
+			Metrics.traversed(hops);
+			doWork();
+			return curr != null;
+		}
+
+		public int size() {
+			return root == null ? 0 : root.size;
+		}
+
+		public Iterator<T> range(T from, T to) {
+			return new RangeIterator(root, from, to);
+		}
+
+		public Iterator<T> iterator() {
+			return range(null, null);
+		}
+
+		public String toString() {
+			StringBuilder str = new StringBuilder("[");
+			for (T t : this) {
+				if (str.length() > 1) {
+					str.append(", ");
+				}
+				str.append(t);
+			}
+			return str.append("]").toString();
+		}
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		// nodes whose own key and right subtree are still to come
+		private ArrayDeque<Node> path = new ArrayDeque<Node>();
+		private T to;
+
+		RangeIterator(Node root, T from, T to) {
+			this.to = to;
+			Node curr = root;
+			while (curr != null) {
+				if (from != null && curr.value.compareTo(from) < 0) {
+					curr = curr.right;
+				} else {
+					path.push(curr);
+					curr = curr.left;
+				}
+			}
+			if (!path.isEmpty() && to != null && path.peek().value.compareTo(to) >= 0) {
+				path.clear();
+			}
+		}
+
+		public boolean hasNext() {
+			return !path.isEmpty();
+		}
+
+		public T next() {
+			if (path.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			Node node = path.pop();
+			for (Node curr = node.right; curr != null; curr = curr.left) {
+				path.push(curr);
+			}
+			if (!path.isEmpty() && to != null && path.peek().value.compareTo(to) >= 0) {
+				path.clear();
+			}
+			return node.value;
+		}
+	}
+
+	private class Node {
+		public final T value;
+		public final Node left;
+		public final Node right;
+		public final int size;
+
+		Node(T v, Node l, Node r) {
+			value = v;
+			left = l;
+			right = r;
+			size = 1 + (l == null ? 0 : l.size) + (r == null ? 0 : r.size);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package data_structures.implementation;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+/*
+ * Elimination decorator for structures that allow duplicates. An add(k)
+ * and a remove(k) that run at the same time can cancel out: linearized as
+ * the add followed by the remove, together they leave a multiset as it
+ * was, so neither needs to touch the wrapped structure. That is exactly
+ * the case that makes a hot key expensive, where both would otherwise
+ * queue up for the same nodes.
+ *
+ * Every key hashes to one slot of an elimination array, so operations on
+ * the same key meet. An operation that finds the matching opposite offer
+ * in its slot takes it; one that finds the slot empty posts its own offer
+ * and waits a little for a partner. A slot held by some other offer, or a
+ * lost CAS, makes the operation back off exponentially and look again;
+ * once the backoff bound passes its maximum the operation gives up and
+ * goes to the wrapped structure. Lookups and batches go straight there.
+ *
+ * With metrics enabled, the report shows how many adds and removes were
+ * eliminated.
+ */
+public class EliminationSorted<T extends Comparable<T>> implements Sorted<T> {
+
+	private static final int ADD = 1;
+	private static final int REMOVE = 2;
+	// 16 references are at least 64 bytes, so no two slots share a cache line
+	private static final int PADDING = 16;
+
+	private Sorted<T> sorted;
+	private int nrSlots;
+	private AtomicReferenceArray<Offer> slots;
+	private int waitSpins;
+	private int minBackoff;
+	private int maxBackoff;
+
+	public EliminationSorted(Sorted<T> sorted, int nrSlots) {
+		this(sorted, nrSlots, 128, 8, 512);
+	}
+
+	/*
+	 * A posted offer waits waitSpins spins for a partner. Backoff spins for
+	 * a random number of spins below a bound that starts at minBackoff and
+	 * doubles after every failed look, up to maxBackoff.
+	 */
+	public EliminationSorted(Sorted<T> sorted, int nrSlots, int waitSpins, int minBackoff, int maxBackoff) {
+		if (nrSlots < 1 || waitSpins < 0 || minBackoff < 1 || maxBackoff < minBackoff) {
+			throw new IllegalArgumentException("need nrSlots >= 1, waitSpins >= 0 and 1 <= minBackoff <= maxBackoff");
+		}
+		this.sorted = sorted;
+		this.nrSlots = nrSlots;
+		this.slots = new AtomicReferenceArray<Offer>(nrSlots * PADDING);
+		this.waitSpins = waitSpins;
+		this.minBackoff = minBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	public void add(T t) {
+		if (!eliminate(ADD, t)) {
+			sorted.add(t);
+		}
+	}
+
+	public void remove(T t) {
+		if (!eliminate(REMOVE, t)) {
+			sorted.remove(t);
+		}
+	}
+
+	public boolean contains(T t) {
+		return sorted.contains(t);
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	public void addAll(List<T> ts) {
+		sorted.addAll(ts);
+	}
+
+	public void removeAll(List<T> ts) {
+		sorted.removeAll(ts);
+	}
+
+	public Iterator<T> range(T from, T to) {
+		return sorted.range(from, to);
+	}
+
+	// Returns true if the operation was cancelled out by an opposite one
+	private boolean eliminate(int op, T t) {
+		int index = slotOf(t);
+		Offer mine = null;
+		for (int bound = minBackoff; ; bound *= 2) {
+			Offer other = slots.get(index);
+			if (other == null) {
+				if (mine == null) {
+					mine = new Offer(op, t);
+				}
+				if (slots.compareAndSet(index, null, mine)) {
+					boolean matched = await(index, mine);
+					Metrics.elimination(matched);
+					return matched;
+				}
+			} else if (other.op != op && t.compareTo(other.key) == 0
+					&& slots.compareAndSet(index, other, null)) {
+				other.matched = true;
+				Metrics.elimination(true);
+				return true;
+			}
+			if (bound > maxBackoff) {
+				Metrics.elimination(false);
+				return false;
+			}
+			backoff(bound);
+		}
+	}
+
+	/*
+	 * Waits for a partner to take mine out of the slot, then withdraws it.
+	 * If withdrawing fails, a partner took it after all.
+	 */
+	private boolean await(int index, Offer mine) {
+		for (int i = 0; i < waitSpins && !mine.matched; i++) {
+			Thread.onSpinWait();
+		}
+		return !slots.compareAndSet(index, mine, null);
+	}
+
+	private void backoff(int bound) {
+		for (int spins = ThreadLocalRandom.current().nextInt(bound); spins >= 0; spins--) {
+			Thread.onSpinWait();
+		}
+	}
+
+	private int slotOf(T t) {
+		int h = t.hashCode();
+		h ^= h >>> 16;
+		return ((h & Integer.MAX_VALUE) % nrSlots) * PADDING;
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+
+	private class Offer {
+		public final int op;
+		public final T key;
+		// set by the partner, so that the owner can stop waiting early
+		public volatile boolean matched;
+
+		Offer(int op, T key) {
+			this.op = op;
+			this.key = key;
+		}
+	}
+}
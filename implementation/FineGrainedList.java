@@ -1,98 +1,251 @@
 package data_structures.implementation;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import data_structures.Sorted;
+import data_structures.metrics.Metrics;
 
 public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
 
-	private Node tail = new Node(null);
-	private Node head = new Node(tail);
+	private LockStrategy locking;
+	private Node tail;
+	private Node head;
 	private int innerWorkTime;
 	private boolean doInnerWork;
 	
 	public FineGrainedList(int innerWorkTime) {
+		this(innerWorkTime, LockStrategy.REENTRANT);
+	}
+
+	public FineGrainedList(int innerWorkTime, LockStrategy locking) {
+		this.locking = locking;
+		this.tail = new PaddedNode(null);
+		this.head = new PaddedNode(tail);
 		this.innerWorkTime = innerWorkTime;
 		this.doInnerWork = innerWorkTime > 0;
 	}
 
 	public void add(T t) {
-		head.lock.lock();
+		int hops = 0;
+		head.lock();
 		Node pred = head;
 		try {
 			Node curr = pred.next;
-			curr.lock.lock();
+			curr.lock();
 			try {
 				if (curr == tail) {
-					head.next = new Node(tail);
-					head.next.next = tail;
-					head.next.key = t;
+					Node newNode = new Node(tail);
+					newNode.key = t;
+					head.next = newNode;
 				} else {
 					while (curr != tail && t.compareTo(curr.key) > 0) {
-						pred.lock.unlock();
+						pred.unlock();
 						pred = curr;
 						curr = curr.next;
-						curr.lock.lock();
+						curr.lock();
+						hops++;
 					}
+					Metrics.traversed(hops);
 					doWork();
 					Node newNode = new Node(curr);
 					newNode.key = t;
 					pred.next = newNode;
 				}
 			} finally {
-				curr.lock.unlock();
+				curr.unlock();
 			}
 		} finally {
-			pred.lock.unlock();
+			pred.unlock();
 		}
 
 	}
 	
 	public void remove(T t) {
 		Node pred, curr;
-		head.lock.lock();
+		int hops = 0;
+		head.lock();
 		pred = head;
 		try {
 			curr = pred.next;
-			curr.lock.lock();
+			curr.lock();
 			try {
-				while (curr != null && t.compareTo(curr.key) > 0) {
-					pred.lock.unlock();
+				while (curr != tail && t.compareTo(curr.key) > 0) {
+					pred.unlock();
 					pred = curr;
 					curr = curr.next;
-					curr.lock.lock();
+					curr.lock();
+					hops++;
 				}
+				Metrics.traversed(hops);
 				doWork();
-				if (t.compareTo(curr.key) == 0) {
+				if (curr != tail && t.compareTo(curr.key) == 0) {
+					curr.marked = true; // for the unlocked contains()
 					pred.next = curr.next;
 				}
 			} finally {
-				curr.lock.unlock();
+				curr.unlock();
 			}
 		} finally {
-			pred.lock.unlock();
+			pred.unlock();
 		}
 	}
 
-	public String toString() {
-		String str = "[";
-		Node curr;
-		if (head.next == tail) {
-			return "[]";
-		}
-		curr = head.next;
-		while (curr.next != null) {
-			str += curr.key; // add element to string
-			str += ", ";
+	/*
+	 * Does not lock any node. Removal marks a node before unlinking it, so a
+	 * node that is reached and not marked is still in the list.
+	 */
+	public boolean contains(T t) {
+		int hops = 0;
+		Node curr = head.next;
+		while (curr != tail && t.compareTo(curr.key) > 0) {
+			curr = curr.next;
+			hops++;
+		}
+		Metrics.traversed(hops);
+		doWork();
+		while (curr != tail && t.compareTo(curr.key) == 0) {
+			if (!curr.marked) {
+				return true;
+			}
+			curr = curr.next;
+		}
+		return false;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next; curr != tail; curr = curr.next) {
+			if (!curr.marked) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Merges the sorted batch into the list in a single hand-over-hand
+	 * sweep, so each node is locked at most once per batch.
+	 */
+	public void addAll(List<T> ts) {
+		Node pred, curr;
+		head.lock();
+		pred = head;
+		try {
+			curr = pred.next;
+			curr.lock();
+			try {
+				for (T t : ts) {
+					while (curr != tail && t.compareTo(curr.key) > 0) {
+						pred.unlock();
+						pred = curr;
+						curr = curr.next;
+						curr.lock();
+					}
+					doWork();
+					Node newNode = new Node(curr);
+					newNode.key = t;
+					pred.next = newNode;
+					// nobody can reach newNode without holding pred
+					newNode.lock();
+					pred.unlock();
+					pred = newNode;
+				}
+			} finally {
+				curr.unlock();
+			}
+		} finally {
+			pred.unlock();
+		}
+	}
+
+	public void removeAll(List<T> ts) {
+		Node pred, curr;
+		head.lock();
+		pred = head;
+		try {
+			curr = pred.next;
+			curr.lock();
+			try {
+				for (T t : ts) {
+					while (curr != tail && t.compareTo(curr.key) > 0) {
+						pred.unlock();
+						pred = curr;
+						curr = curr.next;
+						curr.lock();
+					}
+					doWork();
+					if (curr != tail && t.compareTo(curr.key) == 0) {
+						curr.marked = true; // for the unlocked contains()
+						pred.next = curr.next;
+						Node next = curr.next;
+						next.lock();
+						curr.unlock();
+						curr = next;
+					}
+				}
+			} finally {
+				curr.unlock();
+			}
+		} finally {
+			pred.unlock();
+		}
+	}
+
+	/*
+	 * Walks the live list without taking any node lock and skips marked
+	 * nodes. A removed node keeps its next pointer, so a walk that is
+	 * standing on it when it is unlinked just carries on.
+	 */
+	public Iterator<T> range(T from, T to) {
+		Node curr = head.next;
+		while (curr != tail && from != null && curr.key.compareTo(from) < 0) {
 			curr = curr.next;
 		}
-		if (str.length() > 2) {
-			String str2 = str.substring(0, str.length() - 2);
-			str = str2;
+		return new RangeIterator(curr, to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		private Node next;
+		private T to;
+
+		RangeIterator(Node first, T to) {
+			this.to = to;
+			this.next = skip(first);
+		}
+
+		// First unmarked node from curr on, or null once past the range
+		private Node skip(Node curr) {
+			while (curr != tail && curr.marked) {
+				curr = curr.next;
+			}
+			return curr == tail || (to != null && curr.key.compareTo(to) >= 0) ? null : curr;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			next = skip(next.next);
+			return t;
 		}
-		str += "]";
-		return str;
 	}
 	
 	private void doWork() {
@@ -102,14 +255,34 @@ public class FineGrainedList<T extends Comparable<T>> implements Sorted<T> {
 		}
 	}
 
-	private class Node {
-		private Lock lock = new ReentrantLock();
-
-		public Node next;
+	private class Node extends LockableNode {
+		public volatile Node next;
+		public volatile boolean marked;
 		public T key;
 
 		public Node(Node n) {
+			super(locking);
 			this.next = n;
 		}
+
+		void lock() {
+			acquire(locking);
+		}
+
+		void unlock() {
+			release(locking);
+		}
+	}
+
+	// For the sentinels, which every operation touches; see LockableNode on padding
+	private class PaddedNode extends Node {
+		long p00, p01, p02, p03, p04, p05, p06, p07;
+		long p08, p09, p10, p11, p12, p13, p14, p15;
+		final long[] lockPadding;
+
+		PaddedNode(Node n) {
+			super(n);
+			lockPadding = new long[16];
+		}
 	}
 }
\ No newline at end of file
@@ -1,24 +1,40 @@
 package data_structures.implementation;
 
 import data_structures.Sorted;
+import data_structures.metrics.Metrics;
 
-import java.util.Stack;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 
+	// unlocked walks that overlapped a two-child removal before falling back
+	private static final int RETRIES = 4;
+
+	private LockStrategy locking;
 	private Node guard;
+	// two-child removals, which move a node up the tree; see contains()
+	private AtomicLong movesStarted = new AtomicLong();
+	private AtomicLong movesFinished = new AtomicLong();
 	private int innerWorkTime;
 	private boolean doInnerWork;
 
 	public FineGrainedTree(int innerWorkTime) {
-		guard = new Node(null, null, null);
+		this(innerWorkTime, LockStrategy.REENTRANT);
+	}
+
+	public FineGrainedTree(int innerWorkTime, LockStrategy locking) {
+		this.locking = locking;
+		guard = new PaddedNode();
 		this.innerWorkTime = innerWorkTime;
 		this.doInnerWork = innerWorkTime > 0;
 	}
 
 	public void add(T t) {
+		int hops = 0;
 		Node pred, curr;
 		boolean goLeft;
 		guard.lock();
@@ -36,7 +52,9 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 						pred = curr;
 						curr = goLeft ? curr.left : curr.right;
 						curr.lock();
+						hops++;
 					}
+					Metrics.traversed(hops);
 					doWork();
 					if (goLeft) {
 						curr.left = new Node(t, null, null);
@@ -53,24 +71,138 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 	}
 	
 	public void remove(T t) {
+		int hops = 0;
 		Node pred, curr;
-		Boolean goLeft = true;
+		boolean goLeft = true;
 		guard.lock();
 		pred = guard;
 		curr = guard.left;
 		try {
+			if (curr == null) {
+				return;
+			}
 			curr.lock();
 			try {
-				while (t.compareTo(curr.value) != 0
-						&& null != ((goLeft = t.compareTo(curr.value) < 0) ? curr.left
-								: curr.right)) {
+				int cmp;
+				while ((cmp = t.compareTo(curr.value)) != 0) {
+					Node next = cmp < 0 ? curr.left : curr.right;
+					if (next == null) {
+						break; // not in the tree
+					}
+					goLeft = cmp < 0;
 					pred.unlock();
 					pred = curr;
-					curr = goLeft ? curr.left : curr.right;
+					curr = next;
 					curr.lock();
+					hops++;
 				}
+				Metrics.traversed(hops);
+				doWork();
+				if (cmp == 0) {
+					removeNode(curr, pred, goLeft);
+				}
+			} finally {
+				curr.unlock();
+			}
+		} finally {
+			pred.unlock();
+		}
+	}
+
+	/*
+	 * Into an empty tree the batch is built as a perfectly balanced tree,
+	 * as in CoarseGrainedTree, and linked in under the guard's lock;
+	 * otherwise the keys are added one by one. ts should support fast
+	 * indexed access.
+	 */
+	public void addAll(List<T> ts) {
+		guard.lock();
+		try {
+			if (guard.left == null) {
+				guard.left = build(ts, 0, ts.size());
+				return;
+			}
+		} finally {
+			guard.unlock();
+		}
+		for (T t : ts) {
+			add(t);
+		}
+	}
+
+	// Balanced tree of ts[from..to), which is ascending
+	private Node build(List<T> ts, int from, int to) {
+		if (from == to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		doWork(); // once per key, as adding it one by one would
+		return new Node(ts.get(mid), build(ts, from, mid), build(ts, mid + 1, to));
+	}
+
+	/*
+	 * Descends without taking any node lock. A two-child removal moves the
+	 * predecessor of the removed node up the tree, so a descent that
+	 * overlaps one may miss a key that is present throughout. A miss
+	 * therefore only counts if no such removal was running when the descent
+	 * began or has started since; otherwise the lookup retries, and after
+	 * RETRIES attempts it descends with lock coupling, which no removal can
+	 * overtake.
+	 */
+	public boolean contains(T t) {
+		boolean found = false;
+		for (int attempt = 0; attempt < RETRIES; attempt++) {
+			long finished = movesFinished.get();
+			found = search(t);
+			if (found || movesStarted.get() == finished) {
 				doWork();
-				removeNode(curr, pred, goLeft);
+				return found;
+			}
+			Metrics.casRetry();
+		}
+		found = lockedSearch(t);
+		doWork();
+		return found;
+	}
+
+	private boolean search(T t) {
+		int hops = 0;
+		Node curr = guard.left;
+		int cmp;
+		while (curr != null && (cmp = t.compareTo(curr.value)) != 0) {
+			curr = cmp < 0 ? curr.left : curr.right;
+			hops++;
+		}
+		Metrics.traversed(hops);
+		return curr != null;
+	}
+
+	// Descends as remove() does, holding a node until the next one is locked
+	private boolean lockedSearch(T t) {
+		int hops = 0;
+		Node pred = guard;
+		pred.lock();
+		try {
+			Node curr = guard.left;
+			if (curr == null) {
+				return false;
+			}
+			curr.lock();
+			try {
+				int cmp;
+				while ((cmp = t.compareTo(curr.value)) != 0) {
+					Node next = cmp < 0 ? curr.left : curr.right;
+					if (next == null) {
+						break;
+					}
+					pred.unlock();
+					pred = curr;
+					curr = next;
+					curr.lock();
+					hops++;
+				}
+				Metrics.traversed(hops);
+				return cmp == 0;
 			} finally {
 				curr.unlock();
 			}
@@ -79,44 +211,153 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 		}
 	}
 
+	public int size() {
+		int size = 0;
+		for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+			size++;
+		}
+		return size;
+	}
+
+	/*
+	 * Walks the live tree without taking any node lock. As in contains(), a
+	 * step only counts if no two-child removal overlapped the walk since
+	 * the path was last built from the root; otherwise the path is rebuilt
+	 * from the root after the last key returned. After RETRIES attempts a
+	 * step holds the guard, so that no further removal can begin, and
+	 * retries until the removals already under way have finished. Keys
+	 * always come out in ascending order.
+	 */
+	public Iterator<T> range(T from, T to) {
+		return new RangeIterator(from, to);
+	}
+
 	public String toString() {
-		String result = "[";
-		Stack<Node> toProcess;
-		Node currNode;
-		if (guard.left == null) {
-			// nothing
-		} else if (guard.left.left == null && guard.left.right == null) {
-			result += guard.left.value;
-		} else {
-			toProcess = new Stack<Node>();
-			currNode = guard.left;
-			toProcess.push(currNode);
-			while (currNode.left != null) {
-				currNode = currNode.left;
-				toProcess.push(currNode);
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		// nodes whose own key and right subtree are still to come
+		private ArrayDeque<Node> path = new ArrayDeque<Node>();
+		private T from; // the last key returned, once there is one
+		private T to;
+		private int returned; // how many keys equal to from were returned
+		private int skip; // those of them still to pass on a rebuilt path
+		private long epoch; // movesFinished when the path was built
+		private Node next;
+
+		RangeIterator(T from, T to) {
+			this.from = from;
+			this.to = to;
+			restart();
+			advance();
+		}
+
+		private void restart() {
+			path.clear();
+			skip = returned;
+			epoch = movesFinished.get();
+			descend(guard.left);
+		}
+
+		private void descend(Node curr) {
+			while (curr != null) {
+				if (from != null && curr.value.compareTo(from) < 0) {
+					curr = curr.right;
+				} else {
+					path.push(curr);
+					curr = curr.left;
+				}
+			}
+		}
+
+		private void advance() {
+			for (int attempt = 0; attempt < RETRIES; attempt++) {
+				Node curr = step();
+				if (movesStarted.get() == epoch) {
+					accept(curr);
+					return;
+				}
+				Metrics.casRetry();
+				restart();
 			}
-			while (!toProcess.isEmpty()) {
-				currNode = toProcess.pop();
-				result += currNode.value + ", ";
-				if (currNode.right != null) {
-					currNode = currNode.right;
-					toProcess.push(currNode);
-					while (currNode.left != null) {
-						currNode = currNode.left;
-						toProcess.push(currNode);
+			guard.lock();
+			try {
+				while (true) {
+					Node curr = step();
+					if (movesStarted.get() == epoch) {
+						accept(curr);
+						return;
 					}
+					restart();
+				}
+			} finally {
+				guard.unlock();
+			}
+		}
+
+		// The next node on the path with a key in [from, to), or null
+		private Node step() {
+			while (!path.isEmpty()) {
+				Node curr = path.pop();
+				int cmp = from == null ? 1 : curr.value.compareTo(from);
+				if (cmp < 0) {
+					descend(curr.right); // moved here by a removal; already passed
+					continue;
 				}
+				if (cmp == 0 && skip > 0) {
+					skip--; // returned before the path was rebuilt
+					descend(curr.right);
+					continue;
+				}
+				if (to != null && curr.value.compareTo(to) >= 0) {
+					break;
+				}
+				descend(curr.right);
+				return curr;
+			}
+			path.clear();
+			return null;
+		}
+
+		private void accept(Node curr) {
+			next = curr;
+			if (curr == null) {
+				return;
 			}
+			returned = from != null && curr.value.compareTo(from) == 0 ? returned + 1 : 1;
+			from = curr.value;
+			skip = 0;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.value;
+			advance();
+			return t;
 		}
-		return (result == "[" ? result : result.substring(0,
-				result.length() - 2)) + "]";
 	}
 
 	private void removeNode(Node toRemove, Node parent, boolean isLeft) {
 		Node pred;
 		Node maxOfLeft;
 		Node t;
-		if (toRemove.left != null && toRemove.right != null) {
+		boolean moving = toRemove.left != null && toRemove.right != null;
+		if (moving) {
+			movesStarted.incrementAndGet();
 			pred = toRemove.left;
 			pred.lock();
 			try {
@@ -157,6 +398,9 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 		} else {
 			parent.right = t;
 		}
+		if (moving) {
+			movesFinished.incrementAndGet();
+		}
 	}
 	
 	private void doWork() {
@@ -166,25 +410,36 @@ public class FineGrainedTree<T extends Comparable<T>> implements Sorted<T> {
 		}
 	}
 
-	private class Node {
+	private class Node extends LockableNode {
 		public T value;
-		public Node left;
-		private Node right;
-		private Lock lock;
+		public volatile Node left;
+		private volatile Node right;
 
 		Node(T v, Node l, Node r) {
+			super(locking);
 			value = v;
 			left = l;
 			right = r;
-			lock = new ReentrantLock();
 		}
 
 		void lock() {
-			lock.lock();
+			acquire(locking);
 		}
 
 		void unlock() {
-			lock.unlock();
+			release(locking);
+		}
+	}
+
+	// For the guard, which every operation touches; see LockableNode on padding
+	private class PaddedNode extends Node {
+		long p00, p01, p02, p03, p04, p05, p06, p07;
+		long p08, p09, p10, p11, p12, p13, p14, p15;
+		final long[] lockPadding;
+
+		PaddedNode() {
+			super(null, null, null);
+			lockPadding = new long[16];
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,332 @@
+package data_structures.implementation;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import data_structures.OrderedMap;
+import data_structures.metrics.Metrics;
+
+/*
+ * OrderedMap on the tree of FineGrainedTree. Unlike there, every operation
+ * including get(), floor() and ceiling() descends with lock coupling: it
+ * holds a node until it has locked the next one, so no operation can
+ * overtake another on the same path. Each operation then takes effect
+ * while it holds the node it ends on, which makes all of them
+ * linearizable; putIfAbsent() and computeIfPresent() check and update
+ * under one node lock. f in computeIfPresent() runs under that lock and
+ * is called exactly once.
+ */
+public class FineGrainedTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+	private LockStrategy locking;
+	private Node guard; // the root is always its left child
+	private LongAdder size = new LongAdder();
+
+	public FineGrainedTreeMap() {
+		this(LockStrategy.REENTRANT);
+	}
+
+	public FineGrainedTreeMap(LockStrategy locking) {
+		this.locking = locking;
+		guard = new Node(null, null);
+	}
+
+	public V put(K key, V value) {
+		return insert(key, value, true);
+	}
+
+	public V putIfAbsent(K key, V value) {
+		return insert(key, value, false);
+	}
+
+	private V insert(K key, V value, boolean replace) {
+		Objects.requireNonNull(value);
+		Window window = find(key);
+		try {
+			if (window.found) {
+				V old = window.curr.value;
+				if (replace) {
+					window.curr.value = value;
+				}
+				return old;
+			}
+			Node node = new Node(key, value);
+			if (window.curr == null) {
+				guard.left = node;
+			} else if (key.compareTo(window.curr.key) < 0) {
+				window.curr.left = node;
+			} else {
+				window.curr.right = node;
+			}
+			size.increment();
+			return null;
+		} finally {
+			window.unlock();
+		}
+	}
+
+	public V get(K key) {
+		Window window = find(key);
+		try {
+			return window.found ? window.curr.value : null;
+		} finally {
+			window.unlock();
+		}
+	}
+
+	public V remove(K key) {
+		Window window = find(key);
+		try {
+			if (!window.found) {
+				return null;
+			}
+			V old = window.curr.value;
+			removeNode(window.curr, window.pred, window.isLeft);
+			size.decrement();
+			return old;
+		} finally {
+			window.unlock();
+		}
+	}
+
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> f) {
+		Window window = find(key);
+		try {
+			if (!window.found) {
+				return null;
+			}
+			V value = f.apply(key, window.curr.value);
+			if (value == null) {
+				removeNode(window.curr, window.pred, window.isLeft);
+				size.decrement();
+			} else {
+				window.curr.value = value;
+			}
+			return value;
+		} finally {
+			window.unlock();
+		}
+	}
+
+	public K floor(K key) {
+		return nearest(key, true);
+	}
+
+	public K ceiling(K key) {
+		return nearest(key, false);
+	}
+
+	public int size() {
+		return size.intValue();
+	}
+
+	/*
+	 * Descends towards key with lock coupling and returns with pred and
+	 * curr locked, where curr has key key or is the last node on the path
+	 * (null, with only the guard locked, if the tree is empty).
+	 */
+	private Window find(K key) {
+		int hops = 0;
+		Window window = new Window();
+		Node pred = guard;
+		pred.lock();
+		Node curr = guard.left;
+		boolean isLeft = true;
+		if (curr != null) {
+			curr.lock();
+			int cmp;
+			while ((cmp = key.compareTo(curr.key)) != 0) {
+				Node next = cmp < 0 ? curr.left : curr.right;
+				if (next == null) {
+					break;
+				}
+				isLeft = cmp < 0;
+				pred.unlock();
+				pred = curr;
+				curr = next;
+				curr.lock();
+				hops++;
+			}
+			window.found = cmp == 0;
+		}
+		Metrics.traversed(hops);
+		window.pred = pred;
+		window.curr = curr;
+		window.isLeft = isLeft;
+		return window;
+	}
+
+	/*
+	 * The key of floor() or ceiling(), remembering the last key passed on
+	 * the right side of key on the way down.
+	 */
+	private K nearest(K key, boolean floor) {
+		int hops = 0;
+		K best = null;
+		Node pred = guard;
+		pred.lock();
+		try {
+			Node curr = guard.left;
+			if (curr == null) {
+				return null;
+			}
+			curr.lock();
+			try {
+				while (true) {
+					int cmp = key.compareTo(curr.key);
+					if (cmp == 0 || (floor ? cmp > 0 : cmp < 0)) {
+						best = curr.key;
+					}
+					Node next = cmp == 0 ? null : cmp < 0 ? curr.left : curr.right;
+					if (next == null) {
+						break;
+					}
+					pred.unlock();
+					pred = curr;
+					curr = next;
+					curr.lock();
+					hops++;
+				}
+			} finally {
+				curr.unlock();
+			}
+		} finally {
+			pred.unlock();
+		}
+		Metrics.traversed(hops);
+		return best;
+	}
+
+	// As in FineGrainedTree; toRemove and parent are locked
+	private void removeNode(Node toRemove, Node parent, boolean isLeft) {
+		Node pred;
+		Node maxOfLeft;
+		Node t;
+		if (toRemove.left != null && toRemove.right != null) {
+			pred = toRemove.left;
+			pred.lock();
+			try {
+				if (pred.right == null) {
+					maxOfLeft = pred;
+					removeNode(maxOfLeft, toRemove, true);
+					maxOfLeft.right = toRemove.right;
+				} else {
+					maxOfLeft = pred.right;
+					maxOfLeft.lock();
+					try {
+						while (maxOfLeft.right != null) {
+							pred.unlock();
+							pred = maxOfLeft;
+							maxOfLeft = maxOfLeft.right;
+							maxOfLeft.lock();
+						}
+						removeNode(maxOfLeft, pred, false);
+						maxOfLeft.left = toRemove.left;
+						maxOfLeft.right = toRemove.right;
+					} finally {
+						maxOfLeft.unlock();
+					}
+				}
+			} finally {
+				pred.unlock();
+			}
+			t = maxOfLeft;
+		} else if (toRemove.left != null) {
+			t = toRemove.left;
+		} else if (toRemove.right != null) {
+			t = toRemove.right;
+		} else {
+			t = null;
+		}
+		if (isLeft) {
+			parent.left = t;
+		} else {
+			parent.right = t;
+		}
+	}
+
+	/*
+	 * Locks the whole tree from the guard down, in the same top-down order
+	 * as the updates, so the result is a consistent snapshot. The walk is
+	 * iterative, so a degenerate tree does not overflow the stack: path
+	 * holds the locked nodes from the root down, and a node is unlocked once
+	 * its right subtree has been appended.
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder("{");
+		ArrayDeque<Node> path = new ArrayDeque<Node>();
+		guard.lock();
+		try {
+			lockLeftmost(path, guard.left);
+			Node finished = null; // the root of the subtree appended last
+			while (!path.isEmpty()) {
+				Node node = path.peek();
+				if (node.right == null || node.right != finished) {
+					// the left subtree is done
+					if (str.length() > 1) {
+						str.append(", ");
+					}
+					str.append(node.key).append('=').append(node.value);
+					if (node.right != null) {
+						lockLeftmost(path, node.right);
+						continue;
+					}
+				}
+				path.pop().unlock();
+				finished = node;
+			}
+		} finally {
+			while (!path.isEmpty()) {
+				path.pop().unlock();
+			}
+			guard.unlock();
+		}
+		return str.append("}").toString();
+	}
+
+	// Locks and pushes node and its left descendants, top-down
+	private void lockLeftmost(ArrayDeque<Node> path, Node node) {
+		while (node != null) {
+			node.lock();
+			path.push(node);
+			node = node.left;
+		}
+	}
+
+	private class Window {
+		public Node pred;
+		public Node curr;
+		public boolean isLeft; // curr is pred.left
+		public boolean found; // curr has the key searched for
+
+		void unlock() {
+			if (curr != null) {
+				curr.unlock();
+			}
+			pred.unlock();
+		}
+	}
+
+	private class Node extends LockableNode {
+		public K key;
+		public V value;
+		public Node left;
+		public Node right;
+
+		Node(K k, V v) {
+			super(locking);
+			key = k;
+			value = v;
+		}
+
+		void lock() {
+			acquire(locking);
+		}
+
+		void unlock() {
+			release(locking);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package data_structures.implementation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import data_structures.Sorted;
+
+/*
+ * Flat-combining decorator (Hendler, Incze, Shavit and Tzafrir). A thread
+ * publishes its add or remove in its own slot and then tries to become the
+ * combiner. The combiner collects every pending request, sorts them and
+ * hands them to the wrapped structure as one addAll and one removeAll, so
+ * a list is merged in a single traversal and its lock is taken twice per
+ * round instead of once per operation. The other threads just wait for
+ * their slot to be cleared. Lookups go straight to the wrapped structure.
+ */
+public class FlatCombiningSorted<T extends Comparable<T>> implements Sorted<T> {
+
+	private static final int NONE = 0;
+	private static final int ADD = 1;
+	private static final int REMOVE = 2;
+
+	private Sorted<T> sorted;
+	private Slot[] slots;
+	private AtomicInteger nrSlots = new AtomicInteger();
+	private ThreadLocal<Slot> slot = ThreadLocal.withInitial(() -> register());
+	private Lock lock = new ReentrantLock();
+	// only touched by the combiner, while holding lock
+	private List<T> adds = new ArrayList<T>();
+	private List<T> removes = new ArrayList<T>();
+	private List<Slot> served = new ArrayList<Slot>();
+
+	/*
+	 * Threads beyond the first maxThreads to use the structure do not get a
+	 * slot and call the wrapped structure directly.
+	 */
+	public FlatCombiningSorted(Sorted<T> sorted, int maxThreads) {
+		this.sorted = sorted;
+		this.slots = newSlotArray(maxThreads);
+	}
+
+	public void add(T t) {
+		apply(ADD, t);
+	}
+
+	public void remove(T t) {
+		apply(REMOVE, t);
+	}
+
+	public boolean contains(T t) {
+		return sorted.contains(t);
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	public Iterator<T> range(T from, T to) {
+		return sorted.range(from, to);
+	}
+
+	private void apply(int op, T t) {
+		Slot mine = slot.get();
+		if (mine == null) {
+			if (op == ADD) {
+				sorted.add(t);
+			} else {
+				sorted.remove(t);
+			}
+			return;
+		}
+		mine.key = t;
+		mine.op = op; // publishes the request
+		while (mine.op != NONE) {
+			if (lock.tryLock()) {
+				try {
+					combine();
+				} finally {
+					lock.unlock();
+				}
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	private void combine() {
+		int n = Math.min(nrSlots.get(), slots.length);
+		for (int i = 0; i < n; i++) {
+			Slot s = slots[i];
+			if (s == null) {
+				continue; // still registering; it will combine for itself
+			}
+			int op = s.op;
+			if (op == ADD) {
+				adds.add(s.key);
+				served.add(s);
+			} else if (op == REMOVE) {
+				removes.add(s.key);
+				served.add(s);
+			}
+		}
+		// all collected requests are concurrent, so adds-before-removes is
+		// as valid a linearization as any other
+		if (!adds.isEmpty()) {
+			Collections.sort(adds);
+			sorted.addAll(adds);
+			adds.clear();
+		}
+		if (!removes.isEmpty()) {
+			Collections.sort(removes);
+			sorted.removeAll(removes);
+			removes.clear();
+		}
+		for (Slot s : served) {
+			s.key = null;
+			s.op = NONE; // releases the waiting thread
+		}
+		served.clear();
+	}
+
+	private Slot register() {
+		int index = nrSlots.getAndIncrement();
+		if (index >= slots.length) {
+			return null;
+		}
+		Slot s = new Slot();
+		slots[index] = s;
+		return s;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Slot[] newSlotArray(int length) {
+		return (Slot[]) new FlatCombiningSorted.Slot[length];
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+
+	private class Slot {
+		public volatile int op = NONE;
+		public volatile T key;
+	}
+}
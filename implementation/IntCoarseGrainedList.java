@@ -0,0 +1,186 @@
+package data_structures.implementation;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import data_structures.IntSorted;
+
+public class IntCoarseGrainedList implements IntSorted {
+
+	private Node head;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int size;
+	private int innerWorkTime;
+	private boolean doInnerWork;
+	
+	public IntCoarseGrainedList(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(int t) {
+		Node pred, curr;
+		lock.writeLock().lock();
+		try {
+			if (head == null) {
+				head = new Node(t, null);
+			} else if (t < head.key) {
+				curr = head;
+				head = new Node(t, curr);
+			} else {
+				pred = head;
+				curr = head;
+				while (curr != null && t >= curr.key) {
+					pred = curr;
+					curr = curr.next;
+				}
+				doWork();
+				pred.next = new Node(t, curr);
+			}
+			size++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(int t) {
+		if (head == null) return;
+		Node pred, curr;
+		lock.writeLock().lock();
+		try {
+			pred = curr = head;
+			while (curr != null && t > curr.key) {
+				pred = curr;
+				curr = curr.next;
+			}
+			doWork();
+			if (curr == null) return;
+			if (t == curr.key) {
+				if (curr == head) {
+					head = curr.next;
+				} else {
+					pred.next = curr.next;
+				}
+				size--;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean contains(int t) {
+		Node curr;
+		lock.readLock().lock();
+		try {
+			curr = head;
+			while (curr != null && t > curr.key) {
+				curr = curr.next;
+			}
+			doWork();
+			return curr != null && t == curr.key;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Takes the write lock once and merges the sorted batch into the list
+	 * in a single traversal.
+	 */
+	public void addAll(int[] ts, int from, int to) {
+		Node pred = null;
+		Node curr;
+		lock.writeLock().lock();
+		try {
+			curr = head;
+			for (int i = from; i < to; i++) {
+				int t = ts[i];
+				while (curr != null && t >= curr.key) {
+					pred = curr;
+					curr = curr.next;
+				}
+				doWork();
+				Node newNode = new Node(t, curr);
+				if (pred == null) {
+					head = newNode;
+				} else {
+					pred.next = newNode;
+				}
+				pred = newNode;
+				size++;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void removeAll(int[] ts, int from, int to) {
+		Node pred = null;
+		Node curr;
+		lock.writeLock().lock();
+		try {
+			curr = head;
+			for (int i = from; i < to; i++) {
+				int t = ts[i];
+				while (curr != null && t > curr.key) {
+					pred = curr;
+					curr = curr.next;
+				}
+				doWork();
+				if (curr != null && t == curr.key) {
+					if (pred == null) {
+						head = curr.next;
+					} else {
+						pred.next = curr.next;
+					}
+					curr = curr.next;
+					size--;
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		lock.readLock().lock();
+		try {
+			for (Node curr = head; curr != null; curr = curr.next) {
+				if (curr != head) {
+					str.append(", ");
+				}
+				str.append(curr.key);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return str.append("]").toString();
+	}
+	
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		public int key;
+		public Node next;
+		
+		Node(int k, Node n) {
+			key = k;
+			next = n;
+		}
+	}
+}
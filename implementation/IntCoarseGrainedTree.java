@@ -0,0 +1,182 @@
+package data_structures.implementation;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import data_structures.IntSorted;
+
+public class IntCoarseGrainedTree implements IntSorted {
+
+	private Node guard;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int size;
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public IntCoarseGrainedTree(int innerWorkTime) {
+		guard = new Node(0, null, null);
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(int t) {
+		Node curr, next;
+		lock.writeLock().lock();
+		try {
+			if (guard.left == null) {
+				guard.left = new Node(t, null, null);
+			} else {
+				curr = guard;
+				next = guard.left;
+				while (next != null) {
+					curr = next;
+					next = t < curr.value ? curr.left : curr.right;
+				}
+				doWork();
+				if (t < curr.value) {
+					curr.left = new Node(t, null, null);
+				} else {
+					curr.right = new Node(t, null, null);
+				}
+			}
+			size++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(int t) {
+		Node pred, curr;
+		Boolean goLeft = true;
+		lock.writeLock().lock();
+		try {
+			if (guard.left == null) {
+				return;
+			}
+			pred = guard;
+			curr = guard.left;
+			if (guard.left.left == null && guard.left.right == null) {
+				doWork();
+			}
+			while (curr.value != t
+					&& null != ((goLeft = t < curr.value) ? curr.left
+							: curr.right)) {
+				pred = curr;
+				curr = goLeft ? curr.left : curr.right;
+			}
+			doWork();
+			if (curr.value != t) {
+				return;
+			}
+			removeNode(curr, pred, goLeft);
+			size--;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeNode(Node toRemove, Node parent, boolean isLeft) {
+		Node pred;
+		Node maxOfLeft;
+		Node t;
+		if (toRemove.left != null && toRemove.right != null) {
+			pred = toRemove.left;
+			if (pred.right == null) {
+				maxOfLeft = pred;
+				removeNode(maxOfLeft, toRemove, true);
+				maxOfLeft.right = toRemove.right;
+			} else {
+				maxOfLeft = pred.right;
+				while (maxOfLeft.right != null) {
+					pred = maxOfLeft;
+					maxOfLeft = maxOfLeft.right;
+				}
+				removeNode(maxOfLeft, pred, false);
+				maxOfLeft.left = toRemove.left;
+				maxOfLeft.right = toRemove.right;
+			}
+			t = maxOfLeft;
+		} else if (toRemove.left != null) {
+			t = toRemove.left;
+		} else if (toRemove.right != null) {
+			t = toRemove.right;
+		} else {
+			t = null;
+		}
+		if (isLeft) {
+			parent.left = t;
+		} else {
+			parent.right = t;
+		}
+	}
+
+	public boolean contains(int t) {
+		Node curr;
+		lock.readLock().lock();
+		try {
+			curr = guard.left;
+			while (curr != null && t != curr.value) {
+				curr = t < curr.value ? curr.left : curr.right;
+			}
+			doWork();
+			return curr != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public String toString() {
+		lock.readLock().lock();
+		try {
+			StringBuilder str = new StringBuilder("[");
+			ArrayDeque<Node> path = new ArrayDeque<Node>();
+			Node curr = guard.left;
+			while (curr != null || !path.isEmpty()) {
+				while (curr != null) {
+					path.push(curr);
+					curr = curr.left;
+				}
+				curr = path.pop();
+				if (str.length() > 1) {
+					str.append(", ");
+				}
+				str.append(curr.value);
+				curr = curr.right;
+			}
+			return str.append("]").toString();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end)
+				; // busy wait
+		}
+	}
+
+	private class Node {
+		public int value;
+		public Node left;
+		public Node right;
+
+		Node(int v, Node l, Node r) {
+			value = v;
+			left = l;
+			right = r;
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package data_structures.implementation;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import data_structures.IntSorted;
+
+public class IntFineGrainedList implements IntSorted {
+
+	private Node tail = new Node(null);
+	private Node head = new Node(tail);
+	private int innerWorkTime;
+	private boolean doInnerWork;
+	
+	public IntFineGrainedList(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(int t) {
+		head.lock.lock();
+		Node pred = head;
+		try {
+			Node curr = pred.next;
+			curr.lock.lock();
+			try {
+				if (curr == tail) {
+					Node newNode = new Node(tail);
+					newNode.key = t;
+					head.next = newNode;
+				} else {
+					while (curr != tail && t > curr.key) {
+						pred.lock.unlock();
+						pred = curr;
+						curr = curr.next;
+						curr.lock.lock();
+					}
+					doWork();
+					Node newNode = new Node(curr);
+					newNode.key = t;
+					pred.next = newNode;
+				}
+			} finally {
+				curr.lock.unlock();
+			}
+		} finally {
+			pred.lock.unlock();
+		}
+
+	}
+	
+	public void remove(int t) {
+		Node pred, curr;
+		head.lock.lock();
+		pred = head;
+		try {
+			curr = pred.next;
+			curr.lock.lock();
+			try {
+				while (curr != tail && t > curr.key) {
+					pred.lock.unlock();
+					pred = curr;
+					curr = curr.next;
+					curr.lock.lock();
+				}
+				doWork();
+				if (curr != tail && t == curr.key) {
+					curr.marked = true; // for the unlocked contains()
+					pred.next = curr.next;
+				}
+			} finally {
+				curr.lock.unlock();
+			}
+		} finally {
+			pred.lock.unlock();
+		}
+	}
+
+	/*
+	 * Does not lock any node. Removal marks a node before unlinking it, so a
+	 * node that is reached and not marked is still in the list.
+	 */
+	public boolean contains(int t) {
+		Node curr = head.next;
+		while (curr != tail && t > curr.key) {
+			curr = curr.next;
+		}
+		doWork();
+		while (curr != tail && t == curr.key) {
+			if (!curr.marked) {
+				return true;
+			}
+			curr = curr.next;
+		}
+		return false;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next; curr != tail; curr = curr.next) {
+			if (!curr.marked) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Merges the sorted batch into the list in a single hand-over-hand
+	 * sweep, so each node is locked at most once per batch.
+	 */
+	public void addAll(int[] ts, int from, int to) {
+		Node pred, curr;
+		head.lock.lock();
+		pred = head;
+		try {
+			curr = pred.next;
+			curr.lock.lock();
+			try {
+				for (int i = from; i < to; i++) {
+					int t = ts[i];
+					while (curr != tail && t > curr.key) {
+						pred.lock.unlock();
+						pred = curr;
+						curr = curr.next;
+						curr.lock.lock();
+					}
+					doWork();
+					Node newNode = new Node(curr);
+					newNode.key = t;
+					pred.next = newNode;
+					// nobody can reach newNode without holding pred
+					newNode.lock.lock();
+					pred.lock.unlock();
+					pred = newNode;
+				}
+			} finally {
+				curr.lock.unlock();
+			}
+		} finally {
+			pred.lock.unlock();
+		}
+	}
+
+	public void removeAll(int[] ts, int from, int to) {
+		Node pred, curr;
+		head.lock.lock();
+		pred = head;
+		try {
+			curr = pred.next;
+			curr.lock.lock();
+			try {
+				for (int i = from; i < to; i++) {
+					int t = ts[i];
+					while (curr != tail && t > curr.key) {
+						pred.lock.unlock();
+						pred = curr;
+						curr = curr.next;
+						curr.lock.lock();
+					}
+					doWork();
+					if (curr != tail && t == curr.key) {
+						curr.marked = true; // for the unlocked contains()
+						pred.next = curr.next;
+						Node next = curr.next;
+						next.lock.lock();
+						curr.lock.unlock();
+						curr = next;
+					}
+				}
+			} finally {
+				curr.lock.unlock();
+			}
+		} finally {
+			pred.lock.unlock();
+		}
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (Node curr = head.next; curr != tail; curr = curr.next) {
+			if (curr.marked) {
+				continue;
+			}
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(curr.key);
+		}
+		return str.append("]").toString();
+	}
+	
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		private Lock lock = new ReentrantLock();
+
+		public volatile Node next;
+		public volatile boolean marked;
+		public int key;
+
+		public Node(Node n) {
+			this.next = n;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+package data_structures.implementation;
+
+import data_structures.IntSorted;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IntFineGrainedTree implements IntSorted {
+
+	// unlocked lookups that overlapped a two-child removal before falling back
+	private static final int RETRIES = 4;
+
+	private Node guard;
+	// two-child removals, which move a node up the tree; see contains()
+	private AtomicLong movesStarted = new AtomicLong();
+	private AtomicLong movesFinished = new AtomicLong();
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public IntFineGrainedTree(int innerWorkTime) {
+		guard = new Node(0, null, null);
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(int t) {
+		Node pred, curr;
+		boolean goLeft;
+		guard.lock();
+		pred = guard;
+		try {
+			if (guard.left == null) { // root always left child of guard
+				guard.left = new Node(t, null, null);
+			} else {
+				curr = pred.left;
+				curr.lock();
+				try {
+					while (null != ((goLeft = t < curr.value) ? curr.left
+							: curr.right)) {
+						pred.unlock();
+						pred = curr;
+						curr = goLeft ? curr.left : curr.right;
+						curr.lock();
+					}
+					doWork();
+					if (goLeft) {
+						curr.left = new Node(t, null, null);
+					} else {
+						curr.right = new Node(t, null, null);
+					}
+				} finally {
+					curr.unlock();
+				}
+			}
+		} finally {
+			pred.unlock();
+		}
+	}
+	
+	public void remove(int t) {
+		Node pred, curr;
+		boolean goLeft = true;
+		guard.lock();
+		pred = guard;
+		curr = guard.left;
+		try {
+			if (curr == null) {
+				return;
+			}
+			curr.lock();
+			try {
+				int cmp;
+				while ((cmp = Integer.compare(t, curr.value)) != 0) {
+					Node next = cmp < 0 ? curr.left : curr.right;
+					if (next == null) {
+						break; // not in the tree
+					}
+					goLeft = cmp < 0;
+					pred.unlock();
+					pred = curr;
+					curr = next;
+					curr.lock();
+				}
+				doWork();
+				if (cmp == 0) {
+					removeNode(curr, pred, goLeft);
+				}
+			} finally {
+				curr.unlock();
+			}
+		} finally {
+			pred.unlock();
+		}
+	}
+
+	/*
+	 * Descends without taking any node lock, as FineGrainedTree.contains()
+	 * does: a miss only counts if no two-child removal, which moves a node
+	 * up the tree, overlapped the descent. Otherwise it retries, and after
+	 * RETRIES attempts descends with lock coupling.
+	 */
+	public boolean contains(int t) {
+		boolean found = false;
+		for (int attempt = 0; attempt < RETRIES; attempt++) {
+			long finished = movesFinished.get();
+			found = search(t);
+			if (found || movesStarted.get() == finished) {
+				doWork();
+				return found;
+			}
+		}
+		found = lockedSearch(t);
+		doWork();
+		return found;
+	}
+
+	private boolean search(int t) {
+		Node curr = guard.left;
+		while (curr != null && t != curr.value) {
+			curr = t < curr.value ? curr.left : curr.right;
+		}
+		return curr != null;
+	}
+
+	private boolean lockedSearch(int t) {
+		Node pred = guard;
+		pred.lock();
+		try {
+			Node curr = guard.left;
+			if (curr == null) {
+				return false;
+			}
+			curr.lock();
+			try {
+				while (t != curr.value) {
+					Node next = t < curr.value ? curr.left : curr.right;
+					if (next == null) {
+						break;
+					}
+					pred.unlock();
+					pred = curr;
+					curr = next;
+					curr.lock();
+				}
+				return t == curr.value;
+			} finally {
+				curr.unlock();
+			}
+		} finally {
+			pred.unlock();
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		ArrayDeque<Node> toProcess = new ArrayDeque<Node>();
+		if (guard.left != null) {
+			toProcess.push(guard.left);
+		}
+		while (!toProcess.isEmpty()) {
+			Node currNode = toProcess.pop();
+			size++;
+			if (currNode.left != null) {
+				toProcess.push(currNode.left);
+			}
+			if (currNode.right != null) {
+				toProcess.push(currNode.right);
+			}
+		}
+		return size;
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		ArrayDeque<Node> path = new ArrayDeque<Node>();
+		Node curr = guard.left;
+		while (curr != null || !path.isEmpty()) {
+			while (curr != null) {
+				path.push(curr);
+				curr = curr.left;
+			}
+			curr = path.pop();
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(curr.value);
+			curr = curr.right;
+		}
+		return str.append("]").toString();
+	}
+
+	private void removeNode(Node toRemove, Node parent, boolean isLeft) {
+		Node pred;
+		Node maxOfLeft;
+		Node t;
+		boolean moving = toRemove.left != null && toRemove.right != null;
+		if (moving) {
+			movesStarted.incrementAndGet();
+			pred = toRemove.left;
+			pred.lock();
+			try {
+				if (pred.right == null) {
+					maxOfLeft = pred;
+					removeNode(maxOfLeft, toRemove, true);
+					maxOfLeft.right = toRemove.right;
+				} else {
+					maxOfLeft = pred.right;
+					maxOfLeft.lock();
+					try {
+						while (maxOfLeft.right != null) {
+							pred.unlock();
+							pred = maxOfLeft;
+							maxOfLeft = maxOfLeft.right;
+							maxOfLeft.lock();
+						}
+						removeNode(maxOfLeft, pred, false);
+						maxOfLeft.left = toRemove.left;
+						maxOfLeft.right = toRemove.right;
+					} finally {
+						maxOfLeft.unlock();
+					}
+				}
+			} finally {
+				pred.unlock();
+			}
+			t = maxOfLeft;
+		} else if (toRemove.left != null) {
+			t = toRemove.left;
+		} else if (toRemove.right != null) {
+			t = toRemove.right;
+		} else {
+			t = null;
+		}
+		if (isLeft) {
+			parent.left = t;
+		} else {
+			parent.right = t;
+		}
+		if (moving) {
+			movesFinished.incrementAndGet();
+		}
+	}
+	
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		public int value;
+		public volatile Node left;
+		private volatile Node right;
+		private Lock lock;
+
+		Node(int v, Node l, Node r) {
+			value = v;
+			left = l;
+			right = r;
+			lock = new ReentrantLock();
+		}
+
+		void lock() {
+			lock.lock();
+		}
+
+		void unlock() {
+			lock.unlock();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+package data_structures.implementation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import data_structures.Sorted;
+
+public class LazyList<T extends Comparable<T>> implements Sorted<T> {
+
+	private Node tail = new Node(null, null);
+	private Node head = new Node(null, tail);
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public LazyList(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		while (true) {
+			Node pred = head;
+			Node curr = pred.next;
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = curr.next;
+			}
+			pred.lock.lock();
+			try {
+				curr.lock.lock();
+				try {
+					if (validate(pred, curr)) {
+						doWork();
+						pred.next = new Node(t, curr);
+						return;
+					}
+				} finally {
+					curr.lock.unlock();
+				}
+			} finally {
+				pred.lock.unlock();
+			}
+		}
+	}
+
+	public void remove(T t) {
+		while (true) {
+			Node pred = head;
+			Node curr = pred.next;
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = curr.next;
+			}
+			pred.lock.lock();
+			try {
+				curr.lock.lock();
+				try {
+					if (validate(pred, curr)) {
+						doWork();
+						if (curr != tail && t.compareTo(curr.key) == 0) {
+							curr.marked = true; // logical removal
+							pred.next = curr.next;
+						}
+						return;
+					}
+				} finally {
+					curr.lock.unlock();
+				}
+			} finally {
+				pred.lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Wait-free: takes no locks and never retries.
+	 */
+	public boolean contains(T t) {
+		Node curr = head.next;
+		while (curr != tail && t.compareTo(curr.key) > 0) {
+			curr = curr.next;
+		}
+		doWork();
+		while (curr != tail && t.compareTo(curr.key) == 0) {
+			if (!curr.marked) {
+				return true;
+			}
+			curr = curr.next;
+		}
+		return false;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next; curr != tail; curr = curr.next) {
+			if (!curr.marked) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Unlike OptimisticList there is no need to traverse again: a node is
+	 * reachable exactly when it is not marked.
+	 */
+	private boolean validate(Node pred, Node curr) {
+		return !pred.marked && !curr.marked && pred.next == curr;
+	}
+
+	/*
+	 * Walks the live list without locking and skips marked nodes; a removed
+	 * node keeps its next pointer, so the walk carries on past it.
+	 */
+	public Iterator<T> range(T from, T to) {
+		Node curr = head.next;
+		while (curr != tail && from != null && curr.key.compareTo(from) < 0) {
+			curr = curr.next;
+		}
+		return new RangeIterator(curr, to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		private Node next;
+		private T to;
+
+		RangeIterator(Node first, T to) {
+			this.to = to;
+			this.next = skip(first);
+		}
+
+		// First unmarked node from curr on, or null once past the range
+		private Node skip(Node curr) {
+			while (curr != tail && curr.marked) {
+				curr = curr.next;
+			}
+			return curr == tail || (to != null && curr.key.compareTo(to) >= 0) ? null : curr;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			next = skip(next.next);
+			return t;
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		private Lock lock = new ReentrantLock();
+
+		public volatile Node next;
+		public volatile boolean marked;
+		public T key;
+
+		public Node(T k, Node n) {
+			this.key = k;
+			this.next = n;
+		}
+	}
+}
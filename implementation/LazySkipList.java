@@ -0,0 +1,301 @@
+package data_structures.implementation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import data_structures.Sorted;
+
+/*
+ * Lazy-synchronization skip list (Herlihy, Lev, Luchangco and Shavit).
+ * Updates lock only the predecessors they change and validate them;
+ * contains() takes no locks. Duplicates are kept as a count on the node of
+ * that key, so adding a key that is already present only bumps the count.
+ */
+public class LazySkipList<T extends Comparable<T>> implements Sorted<T> {
+
+	private static final int MAX_LEVEL = 24;
+
+	private Node head = new Node(null, MAX_LEVEL);
+	private Node tail = new Node(null, MAX_LEVEL);
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public LazySkipList(int innerWorkTime) {
+		for (int level = 0; level <= MAX_LEVEL; level++) {
+			head.next.set(level, tail);
+		}
+		head.fullyLinked = true;
+		tail.fullyLinked = true;
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		int topLevel = randomLevel();
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			int lFound = find(t, preds, succs);
+			if (lFound != -1) {
+				Node found = succs[lFound];
+				if (!found.marked) {
+					while (!found.fullyLinked); // wait for the insertion to finish
+					found.lock.lock();
+					try {
+						if (!found.marked) {
+							doWork();
+							found.count++;
+							return;
+						}
+					} finally {
+						found.lock.unlock();
+					}
+				}
+				continue; // found is being removed; retry once it is unlinked
+			}
+			int highestLocked = -1;
+			try {
+				boolean valid = true;
+				for (int level = 0; valid && level <= topLevel; level++) {
+					Node pred = preds[level];
+					Node succ = succs[level];
+					pred.lock.lock();
+					highestLocked = level;
+					valid = !pred.marked && !succ.marked && pred.next.get(level) == succ;
+				}
+				if (!valid) {
+					continue;
+				}
+				doWork();
+				Node newNode = new Node(t, topLevel);
+				for (int level = 0; level <= topLevel; level++) {
+					newNode.next.set(level, succs[level]);
+				}
+				for (int level = 0; level <= topLevel; level++) {
+					preds[level].next.set(level, newNode);
+				}
+				newNode.fullyLinked = true;
+				return;
+			} finally {
+				for (int level = 0; level <= highestLocked; level++) {
+					preds[level].lock.unlock();
+				}
+			}
+		}
+	}
+
+	public void remove(T t) {
+		Node victim = null;
+		boolean isMarked = false;
+		int topLevel = -1;
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			int lFound = find(t, preds, succs);
+			if (lFound != -1) {
+				victim = succs[lFound];
+			}
+			if (!isMarked && (lFound == -1 || !victim.fullyLinked
+					|| victim.topLevel != lFound || victim.marked)) {
+				doWork();
+				return;
+			}
+			if (!isMarked) {
+				topLevel = victim.topLevel;
+				victim.lock.lock();
+				if (victim.marked) {
+					victim.lock.unlock();
+					doWork();
+					return;
+				}
+				doWork();
+				if (victim.count > 1) {
+					victim.count--;
+					victim.lock.unlock();
+					return;
+				}
+				victim.marked = true; // logical removal
+				isMarked = true;
+			}
+			int highestLocked = -1;
+			try {
+				boolean valid = true;
+				for (int level = 0; valid && level <= topLevel; level++) {
+					Node pred = preds[level];
+					pred.lock.lock();
+					highestLocked = level;
+					valid = !pred.marked && pred.next.get(level) == victim;
+				}
+				if (!valid) {
+					continue;
+				}
+				for (int level = topLevel; level >= 0; level--) {
+					preds[level].next.set(level, victim.next.get(level));
+				}
+				victim.lock.unlock();
+				return;
+			} finally {
+				for (int level = 0; level <= highestLocked; level++) {
+					preds[level].lock.unlock();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Wait-free: takes no locks and never retries.
+	 */
+	public boolean contains(T t) {
+		Node pred = head;
+		Node curr = null;
+		for (int level = MAX_LEVEL; level >= 0; level--) {
+			curr = pred.next.get(level);
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = pred.next.get(level);
+			}
+		}
+		doWork();
+		return curr != tail && t.compareTo(curr.key) == 0
+				&& curr.fullyLinked && !curr.marked;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next.get(0); curr != tail; curr = curr.next.get(0)) {
+			if (curr.fullyLinked && !curr.marked) {
+				size += curr.count;
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Fills in the predecessor and successor of t at every level and
+	 * returns the highest level at which a node with key t was found, or -1.
+	 */
+	private int find(T t, Node[] preds, Node[] succs) {
+		int lFound = -1;
+		Node pred = head;
+		for (int level = MAX_LEVEL; level >= 0; level--) {
+			Node curr = pred.next.get(level);
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = pred.next.get(level);
+			}
+			if (lFound == -1 && curr != tail && t.compareTo(curr.key) == 0) {
+				lFound = level;
+			}
+			preds[level] = pred;
+			succs[level] = curr;
+		}
+		return lFound;
+	}
+
+	// Geometric distribution: level l is chosen with probability 2^-(l+1)
+	private int randomLevel() {
+		return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node[] newNodeArray() {
+		return (Node[]) new LazySkipList.Node[MAX_LEVEL + 1];
+	}
+
+	/*
+	 * Finds the first key >= from through the upper levels, as contains()
+	 * does, then walks the bottom level without locking. A key is returned
+	 * as many times as it was added.
+	 */
+	public Iterator<T> range(T from, T to) {
+		Node pred = head;
+		if (from != null) {
+			for (int level = MAX_LEVEL; level >= 0; level--) {
+				Node curr = pred.next.get(level);
+				while (curr != tail && from.compareTo(curr.key) > 0) {
+					pred = curr;
+					curr = pred.next.get(level);
+				}
+			}
+		}
+		return new RangeIterator(pred.next.get(0), to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		private Node next;
+		private int remaining; // copies of next.key still to return
+		private T to;
+
+		RangeIterator(Node first, T to) {
+			this.to = to;
+			advance(first);
+		}
+
+		// Moves to the first live node from curr on, or to null once past the range
+		private void advance(Node curr) {
+			while (curr != tail && (to == null || curr.key.compareTo(to) < 0)) {
+				remaining = curr.count;
+				if (curr.fullyLinked && !curr.marked && remaining > 0) {
+					next = curr;
+					return;
+				}
+				curr = curr.next.get(0);
+			}
+			next = null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			if (--remaining == 0) {
+				advance(next.next.get(0));
+			}
+			return t;
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		private Lock lock = new ReentrantLock();
+
+		public T key;
+		public int topLevel;
+		public AtomicReferenceArray<Node> next;
+		public volatile int count = 1; // guarded by lock
+		public volatile boolean marked;
+		public volatile boolean fullyLinked;
+
+		Node(T k, int height) {
+			key = k;
+			topLevel = height;
+			next = new AtomicReferenceArray<Node>(height + 1);
+		}
+	}
+}
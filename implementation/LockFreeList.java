@@ -0,0 +1,201 @@
+package data_structures.implementation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+public class LockFreeList<T extends Comparable<T>> implements Sorted<T> {
+
+	private Node tail = new Node(null, null);
+	private Node head = new Node(null, tail);
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public LockFreeList(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		while (true) {
+			// insert after any equal keys, like CoarseGrainedList does
+			Window window = find(t, true);
+			doWork();
+			Node newNode = new Node(t, window.curr);
+			if (window.pred.next.compareAndSet(window.curr, newNode, false, false)) {
+				return;
+			}
+			Metrics.casRetry();
+		}
+	}
+
+	public void remove(T t) {
+		while (true) {
+			Window window = find(t, false);
+			Node curr = window.curr;
+			doWork();
+			if (curr == tail || t.compareTo(curr.key) != 0) {
+				return;
+			}
+			Node succ = curr.next.getReference();
+			// logical removal; the physical unlink may be left to a later find().
+			// Only the thread whose CAS marks curr has removed it; attemptMark()
+			// would also succeed if another remove() had marked it already
+			if (!curr.next.compareAndSet(succ, succ, false, true)) {
+				Metrics.casRetry();
+				continue;
+			}
+			window.pred.next.compareAndSet(curr, succ, false, false);
+			return;
+		}
+	}
+
+	/*
+	 * Wait-free: never helps unlink marked nodes, it only skips them.
+	 */
+	public boolean contains(T t) {
+		Node curr = head.next.getReference();
+		while (curr != tail && t.compareTo(curr.key) > 0) {
+			curr = curr.next.getReference();
+		}
+		doWork();
+		while (curr != tail && t.compareTo(curr.key) == 0) {
+			if (!curr.next.isMarked()) {
+				return true;
+			}
+			curr = curr.next.getReference();
+		}
+		return false;
+	}
+
+	public int size() {
+		int size = 0;
+		boolean[] marked = { false };
+		Node curr = head.next.getReference();
+		while (curr != tail) {
+			Node succ = curr.next.get(marked);
+			if (!marked[0]) {
+				size++;
+			}
+			curr = succ;
+		}
+		return size;
+	}
+
+	/*
+	 * Returns the first unmarked node whose key is >= t (or > t if after is
+	 * set) together with its predecessor, unlinking marked nodes on the way.
+	 */
+	private Window find(T t, boolean after) {
+		Node pred, curr, succ;
+		boolean[] marked = { false };
+		retry: while (true) {
+			pred = head;
+			curr = pred.next.getReference();
+			while (true) {
+				succ = curr.next.get(marked);
+				while (marked[0]) {
+					if (!pred.next.compareAndSet(curr, succ, false, false)) {
+						Metrics.casRetry();
+						continue retry;
+					}
+					curr = succ;
+					succ = curr.next.get(marked);
+				}
+				if (curr == tail) {
+					return new Window(pred, curr);
+				}
+				int cmp = t.compareTo(curr.key);
+				if (after ? cmp < 0 : cmp <= 0) {
+					return new Window(pred, curr);
+				}
+				pred = curr;
+				curr = succ;
+			}
+		}
+	}
+
+	/*
+	 * Wait-free, like contains(): skips marked nodes but never helps unlink
+	 * them.
+	 */
+	public Iterator<T> range(T from, T to) {
+		Node curr = head.next.getReference();
+		while (curr != tail && from != null && curr.key.compareTo(from) < 0) {
+			curr = curr.next.getReference();
+		}
+		return new RangeIterator(curr, to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		private Node next;
+		private T to;
+
+		RangeIterator(Node first, T to) {
+			this.to = to;
+			this.next = skip(first);
+		}
+
+		// First unmarked node from curr on, or null once past the range
+		private Node skip(Node curr) {
+			while (curr != tail && curr.next.isMarked()) {
+				curr = curr.next.getReference();
+			}
+			return curr == tail || (to != null && curr.key.compareTo(to) >= 0) ? null : curr;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			next = skip(next.next.getReference());
+			return t;
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		public T key;
+		public AtomicMarkableReference<Node> next;
+
+		Node(T k, Node n) {
+			key = k;
+			next = new AtomicMarkableReference<Node>(n, false);
+		}
+	}
+
+	private class Window {
+		public Node pred;
+		public Node curr;
+
+		Window(Node p, Node c) {
+			pred = p;
+			curr = c;
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package data_structures.implementation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+/*
+ * Lock-free skip list (Fraser; Herlihy and Shavit). Every level is a
+ * Harris-style list of AtomicMarkableReferences; the bottom level decides
+ * membership and the upper levels are shortcuts. Duplicates are kept as a
+ * count on the node of that key: the thread whose CAS takes the count from
+ * one to zero removes the key, after which anyone may help mark the node.
+ */
+public class LockFreeSkipList<T extends Comparable<T>> implements Sorted<T> {
+
+	private static final int MAX_LEVEL = 24;
+
+	private Node head = new Node(null, MAX_LEVEL);
+	private Node tail = new Node(null, MAX_LEVEL);
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public LockFreeSkipList(int innerWorkTime) {
+		for (int level = 0; level <= MAX_LEVEL; level++) {
+			head.next[level].set(tail, false);
+		}
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		int topLevel = randomLevel();
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			if (find(t, preds, succs)) {
+				Node found = succs[0];
+				int count = found.count.get();
+				doWork();
+				if (count > 0) {
+					if (found.count.compareAndSet(count, count + 1)) {
+						return;
+					}
+					Metrics.casRetry();
+				} else {
+					markLevels(found); // help the remover, then retry
+				}
+				continue;
+			}
+			Node newNode = new Node(t, topLevel);
+			for (int level = 0; level <= topLevel; level++) {
+				newNode.next[level].set(succs[level], false);
+			}
+			doWork();
+			if (!preds[0].next[0].compareAndSet(succs[0], newNode, false, false)) {
+				Metrics.casRetry();
+				continue;
+			}
+			for (int level = 1; level <= topLevel; level++) {
+				while (true) {
+					Node pred = preds[level];
+					Node succ = succs[level];
+					Node old = newNode.next[level].getReference();
+					if (old != succ && !newNode.next[level].compareAndSet(old, succ, false, false)) {
+						break; // newNode is already being removed
+					}
+					if (pred.next[level].compareAndSet(succ, newNode, false, false)) {
+						break;
+					}
+					Metrics.casRetry();
+					find(t, preds, succs);
+				}
+			}
+			return;
+		}
+	}
+
+	public void remove(T t) {
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			boolean found = find(t, preds, succs);
+			doWork();
+			if (!found) {
+				return;
+			}
+			Node victim = succs[0];
+			int count = victim.count.get();
+			if (count > 1) {
+				if (victim.count.compareAndSet(count, count - 1)) {
+					return;
+				}
+				Metrics.casRetry();
+			} else if (count == 1) {
+				if (victim.count.compareAndSet(1, 0)) {
+					markLevels(victim);
+					find(t, preds, succs); // unlink it
+					return;
+				}
+				Metrics.casRetry();
+			} else {
+				markLevels(victim);
+			}
+		}
+	}
+
+	/*
+	 * Wait-free: skips marked nodes but never unlinks them.
+	 */
+	public boolean contains(T t) {
+		boolean[] marked = { false };
+		Node pred = head;
+		Node curr = null;
+		Node succ;
+		for (int level = MAX_LEVEL; level >= 0; level--) {
+			curr = pred.next[level].getReference();
+			while (true) {
+				succ = curr.next[level].get(marked);
+				while (marked[0]) {
+					curr = succ;
+					succ = curr.next[level].get(marked);
+				}
+				if (curr != tail && t.compareTo(curr.key) > 0) {
+					pred = curr;
+					curr = succ;
+				} else {
+					break;
+				}
+			}
+		}
+		doWork();
+		return curr != tail && t.compareTo(curr.key) == 0 && curr.count.get() > 0;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next[0].getReference(); curr != tail; curr = curr.next[0].getReference()) {
+			if (!curr.next[0].isMarked()) {
+				size += curr.count.get();
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Fills in the predecessor and successor of t at every level, unlinking
+	 * marked nodes on the way, and returns whether the bottom-level
+	 * successor has key t.
+	 */
+	private boolean find(T t, Node[] preds, Node[] succs) {
+		boolean[] marked = { false };
+		Node pred, curr, succ;
+		retry: while (true) {
+			pred = head;
+			for (int level = MAX_LEVEL; level >= 0; level--) {
+				curr = pred.next[level].getReference();
+				while (true) {
+					succ = curr.next[level].get(marked);
+					while (marked[0]) {
+						if (!pred.next[level].compareAndSet(curr, succ, false, false)) {
+							Metrics.casRetry();
+							continue retry;
+						}
+						curr = succ;
+						succ = curr.next[level].get(marked);
+					}
+					if (curr != tail && t.compareTo(curr.key) > 0) {
+						pred = curr;
+						curr = succ;
+					} else {
+						break;
+					}
+				}
+				preds[level] = pred;
+				succs[level] = curr;
+			}
+			return succs[0] != tail && t.compareTo(succs[0].key) == 0;
+		}
+	}
+
+	// Marks every level of node, top-down; idempotent so any thread may help
+	private void markLevels(Node node) {
+		boolean[] marked = { false };
+		for (int level = node.topLevel; level >= 0; level--) {
+			Node succ = node.next[level].get(marked);
+			while (!marked[0]) {
+				node.next[level].attemptMark(succ, true);
+				succ = node.next[level].get(marked);
+			}
+		}
+	}
+
+	// Geometric distribution: level l is chosen with probability 2^-(l+1)
+	private int randomLevel() {
+		return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node[] newNodeArray() {
+		return (Node[]) new LockFreeSkipList.Node[MAX_LEVEL + 1];
+	}
+
+	/*
+	 * Wait-free, like contains(): finds the first key >= from through the
+	 * upper levels and walks the bottom level, skipping marked nodes and
+	 * returning a key as many times as its count says.
+	 */
+	public Iterator<T> range(T from, T to) {
+		Node pred = head;
+		if (from != null) {
+			for (int level = MAX_LEVEL; level >= 0; level--) {
+				Node curr = pred.next[level].getReference();
+				while (curr != tail && from.compareTo(curr.key) > 0) {
+					pred = curr;
+					curr = pred.next[level].getReference();
+				}
+			}
+		}
+		return new RangeIterator(pred.next[0].getReference(), to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		private Node next;
+		private int remaining; // copies of next.key still to return
+		private T to;
+
+		RangeIterator(Node first, T to) {
+			this.to = to;
+			advance(first);
+		}
+
+		// Moves to the first live node from curr on, or to null once past the range
+		private void advance(Node curr) {
+			while (curr != tail && (to == null || curr.key.compareTo(to) < 0)) {
+				remaining = curr.count.get();
+				if (!curr.next[0].isMarked() && remaining > 0) {
+					next = curr;
+					return;
+				}
+				curr = curr.next[0].getReference();
+			}
+			next = null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			if (--remaining == 0) {
+				advance(next.next[0].getReference());
+			}
+			return t;
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		public T key;
+		public int topLevel;
+		public AtomicMarkableReference<Node>[] next;
+		public AtomicInteger count = new AtomicInteger(1);
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Node(T k, int height) {
+			key = k;
+			topLevel = height;
+			next = (AtomicMarkableReference<Node>[]) new AtomicMarkableReference[height + 1];
+			for (int level = 0; level <= height; level++) {
+				next[level] = new AtomicMarkableReference<Node>(null, false);
+			}
+		}
+	}
+}
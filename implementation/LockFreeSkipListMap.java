@@ -0,0 +1,297 @@
+package data_structures.implementation;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import data_structures.OrderedMap;
+import data_structures.metrics.Metrics;
+
+/*
+ * OrderedMap on the lock-free skip list of LockFreeSkipList. The count of
+ * that list becomes an AtomicReference to the value, and a key is present
+ * exactly while its value is not null: put, putIfAbsent, remove and
+ * computeIfPresent all take effect with one CAS on the value, after
+ * which a removed node is marked and unlinked as before. A put that finds
+ * a node whose value is already null helps to remove it and inserts a new
+ * node, so a value is never written into a node that is on its way out.
+ *
+ * get() is wait-free. floor() and ceiling() are too, and return a key that
+ * was present at some moment during the call.
+ */
+public class LockFreeSkipListMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+	private static final int MAX_LEVEL = 24;
+
+	private Node head = new Node(null, null, MAX_LEVEL);
+	private Node tail = new Node(null, null, MAX_LEVEL);
+
+	public LockFreeSkipListMap() {
+		for (int level = 0; level <= MAX_LEVEL; level++) {
+			head.next[level].set(tail, false);
+		}
+	}
+
+	public V put(K key, V value) {
+		return insert(key, value, true);
+	}
+
+	public V putIfAbsent(K key, V value) {
+		return insert(key, value, false);
+	}
+
+	private V insert(K key, V value, boolean replace) {
+		Objects.requireNonNull(value);
+		int topLevel = randomLevel();
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			if (find(key, preds, succs)) {
+				Node found = succs[0];
+				V old = found.value.get();
+				if (old != null) {
+					if (!replace || found.value.compareAndSet(old, value)) {
+						return old;
+					}
+					Metrics.casRetry();
+				} else {
+					markLevels(found); // help the remover, then retry
+				}
+				continue;
+			}
+			Node newNode = new Node(key, value, topLevel);
+			for (int level = 0; level <= topLevel; level++) {
+				newNode.next[level].set(succs[level], false);
+			}
+			if (!preds[0].next[0].compareAndSet(succs[0], newNode, false, false)) {
+				Metrics.casRetry();
+				continue;
+			}
+			for (int level = 1; level <= topLevel; level++) {
+				while (true) {
+					Node pred = preds[level];
+					Node succ = succs[level];
+					Node old = newNode.next[level].getReference();
+					if (old != succ && !newNode.next[level].compareAndSet(old, succ, false, false)) {
+						break; // newNode is already being removed
+					}
+					if (pred.next[level].compareAndSet(succ, newNode, false, false)) {
+						break;
+					}
+					Metrics.casRetry();
+					find(key, preds, succs);
+				}
+			}
+			return null;
+		}
+	}
+
+	public V get(K key) {
+		Node node = ceilingNode(key);
+		return node != tail && key.compareTo(node.key) == 0 ? node.value.get() : null;
+	}
+
+	public V remove(K key) {
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			if (!find(key, preds, succs)) {
+				return null;
+			}
+			Node victim = succs[0];
+			V old = victim.value.get();
+			if (old == null) {
+				markLevels(victim); // being removed by someone else
+			} else if (victim.value.compareAndSet(old, null)) {
+				markLevels(victim);
+				find(key, preds, succs); // unlink it
+				return old;
+			} else {
+				Metrics.casRetry();
+			}
+		}
+	}
+
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> f) {
+		Node[] preds = newNodeArray();
+		Node[] succs = newNodeArray();
+		while (true) {
+			if (!find(key, preds, succs)) {
+				return null;
+			}
+			Node node = succs[0];
+			V old = node.value.get();
+			if (old == null) {
+				markLevels(node);
+				continue;
+			}
+			V value = f.apply(key, old);
+			if (node.value.compareAndSet(old, value)) {
+				if (value == null) {
+					markLevels(node);
+					find(key, preds, succs);
+				}
+				return value;
+			}
+			Metrics.casRetry();
+		}
+	}
+
+	public K floor(K key) {
+		Node node = ceilingNode(key);
+		if (node != tail && key.compareTo(node.key) == 0) {
+			return key;
+		}
+		while (true) {
+			Node pred = lastBefore(key);
+			if (pred == head) {
+				return null;
+			} else if (pred.value.get() != null) {
+				return pred.key;
+			}
+			key = pred.key; // removed but not yet marked; look below it
+		}
+	}
+
+	public K ceiling(K key) {
+		Node node = ceilingNode(key);
+		return node == tail ? null : node.key;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next[0].getReference(); curr != tail; curr = curr.next[0].getReference()) {
+			if (!curr.next[0].isMarked() && curr.value.get() != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Wait-free, like LockFreeSkipList.contains(): the last unmarked node
+	 * on the bottom level with a key < key, or head.
+	 */
+	private Node lastBefore(K key) {
+		boolean[] marked = { false };
+		Node pred = head;
+		for (int level = MAX_LEVEL; level >= 0; level--) {
+			Node curr = pred.next[level].getReference();
+			while (true) {
+				Node succ = curr.next[level].get(marked);
+				while (marked[0]) {
+					curr = succ;
+					succ = curr.next[level].get(marked);
+				}
+				if (curr != tail && key.compareTo(curr.key) > 0) {
+					pred = curr;
+					curr = succ;
+				} else {
+					break;
+				}
+			}
+		}
+		return pred;
+	}
+
+	// The first node with a key >= key that still has a value, or tail
+	private Node ceilingNode(K key) {
+		Node curr = lastBefore(key).next[0].getReference();
+		while (curr != tail && (key.compareTo(curr.key) > 0 || curr.value.get() == null)) {
+			curr = curr.next[0].getReference();
+		}
+		return curr;
+	}
+
+	/*
+	 * Fills in the predecessor and successor of key at every level,
+	 * unlinking marked nodes on the way, and returns whether the
+	 * bottom-level successor has key key.
+	 */
+	private boolean find(K key, Node[] preds, Node[] succs) {
+		boolean[] marked = { false };
+		Node pred, curr, succ;
+		retry: while (true) {
+			pred = head;
+			for (int level = MAX_LEVEL; level >= 0; level--) {
+				curr = pred.next[level].getReference();
+				while (true) {
+					succ = curr.next[level].get(marked);
+					while (marked[0]) {
+						if (!pred.next[level].compareAndSet(curr, succ, false, false)) {
+							Metrics.casRetry();
+							continue retry;
+						}
+						curr = succ;
+						succ = curr.next[level].get(marked);
+					}
+					if (curr != tail && key.compareTo(curr.key) > 0) {
+						pred = curr;
+						curr = succ;
+					} else {
+						break;
+					}
+				}
+				preds[level] = pred;
+				succs[level] = curr;
+			}
+			return succs[0] != tail && key.compareTo(succs[0].key) == 0;
+		}
+	}
+
+	// Marks every level of node, top-down; idempotent so any thread may help
+	private void markLevels(Node node) {
+		boolean[] marked = { false };
+		for (int level = node.topLevel; level >= 0; level--) {
+			Node succ = node.next[level].get(marked);
+			while (!marked[0]) {
+				node.next[level].attemptMark(succ, true);
+				succ = node.next[level].get(marked);
+			}
+		}
+	}
+
+	// Geometric distribution: level l is chosen with probability 2^-(l+1)
+	private int randomLevel() {
+		return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Node[] newNodeArray() {
+		return (Node[]) new LockFreeSkipListMap.Node[MAX_LEVEL + 1];
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("{");
+		for (Node curr = head.next[0].getReference(); curr != tail; curr = curr.next[0].getReference()) {
+			V value = curr.value.get();
+			if (value != null && !curr.next[0].isMarked()) {
+				if (str.length() > 1) {
+					str.append(", ");
+				}
+				str.append(curr.key).append('=').append(value);
+			}
+		}
+		return str.append("}").toString();
+	}
+
+	private class Node {
+		public K key;
+		public int topLevel;
+		public AtomicMarkableReference<Node>[] next;
+		public AtomicReference<V> value;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Node(K k, V v, int height) {
+			key = k;
+			value = new AtomicReference<V>(v);
+			topLevel = height;
+			next = (AtomicMarkableReference<Node>[]) new AtomicMarkableReference[height + 1];
+			for (int level = 0; level <= height; level++) {
+				next[level] = new AtomicMarkableReference<Node>(null, false);
+			}
+		}
+	}
+}
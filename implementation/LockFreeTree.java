@@ -0,0 +1,354 @@
+package data_structures.implementation;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+/*
+ * Non-blocking external binary search tree (Ellen, Fatourou, Ruppert and
+ * van Breugel). Keys live in the leaves; internal nodes only route. Every
+ * update first flags the internal node(s) it will change with an Update
+ * record so that other threads can help it finish instead of blocking.
+ * Keys are unique: adding a key that is already present has no effect.
+ */
+public class LockFreeTree<T extends Comparable<T>> implements Sorted<T> {
+
+	private static final int CLEAN = 0;
+	private static final int IFLAG = 1;
+	private static final int DFLAG = 2;
+	private static final int MARK = 3;
+
+	private Internal root;
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public LockFreeTree(int innerWorkTime) {
+		// two sentinel keys, both larger than any real key
+		root = new Internal(null, 2, new Leaf(null, 1), new Leaf(null, 2));
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		while (true) {
+			Search s = search(t);
+			doWork();
+			if (compare(t, 0, s.l) == 0) {
+				return;
+			}
+			if (s.pupdate.state != CLEAN) {
+				help(s.pupdate);
+				continue;
+			}
+			Leaf newLeaf = new Leaf(t, 0);
+			Leaf newSibling = new Leaf(s.l.key, s.l.inf);
+			Internal newInternal;
+			if (compare(t, 0, s.l) < 0) {
+				newInternal = new Internal(s.l.key, s.l.inf, newLeaf, newSibling);
+			} else {
+				newInternal = new Internal(t, 0, newSibling, newLeaf);
+			}
+			Update flag = new Update(IFLAG, new InsertInfo(s.p, s.l, newInternal));
+			if (s.p.update.compareAndSet(s.pupdate, flag)) {
+				helpInsert(flag);
+				return;
+			}
+			Metrics.casRetry();
+			help(s.p.update.get());
+		}
+	}
+
+	public void remove(T t) {
+		while (true) {
+			Search s = search(t);
+			doWork();
+			if (compare(t, 0, s.l) != 0) {
+				return;
+			}
+			if (s.gpupdate.state != CLEAN) {
+				help(s.gpupdate);
+				continue;
+			}
+			if (s.pupdate.state != CLEAN) {
+				help(s.pupdate);
+				continue;
+			}
+			Update flag = new Update(DFLAG, new DeleteInfo(s.gp, s.p, s.l, s.pupdate));
+			if (s.gp.update.compareAndSet(s.gpupdate, flag)) {
+				if (helpDelete(flag)) {
+					return;
+				}
+				Metrics.casRetry();
+			} else {
+				Metrics.casRetry();
+				help(s.gp.update.get());
+			}
+		}
+	}
+
+	public boolean contains(T t) {
+		Node l = root;
+		while (l instanceof Internal) {
+			l = compare(t, 0, l) < 0 ? ((Internal) l).left.get() : ((Internal) l).right.get();
+		}
+		doWork();
+		return compare(t, 0, l) == 0;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+			size++;
+		}
+		return size;
+	}
+
+	private Search search(T t) {
+		Search s = new Search();
+		Node l = root;
+		while (l instanceof Internal) {
+			s.gp = s.p;
+			s.p = (Internal) l;
+			s.gpupdate = s.pupdate;
+			s.pupdate = s.p.update.get();
+			l = compare(t, 0, s.p) < 0 ? s.p.left.get() : s.p.right.get();
+		}
+		s.l = (Leaf) l;
+		return s;
+	}
+
+	private void help(Update u) {
+		if (u.state == IFLAG) {
+			helpInsert(u);
+		} else if (u.state == MARK) {
+			helpMarked((DeleteInfo) u.info);
+		} else if (u.state == DFLAG) {
+			helpDelete(u);
+		}
+	}
+
+	private void helpInsert(Update u) {
+		InsertInfo op = (InsertInfo) u.info;
+		casChild(op.p, op.l, op.newInternal);
+		op.p.update.compareAndSet(u, new Update(CLEAN, op));
+	}
+
+	private boolean helpDelete(Update u) {
+		DeleteInfo op = (DeleteInfo) u.info;
+		Update mark = new Update(MARK, op);
+		Update current;
+		if (op.p.update.compareAndSet(op.pupdate, mark)
+				|| ((current = op.p.update.get()).state == MARK && current.info == op)) {
+			helpMarked(op);
+			return true;
+		}
+		// the parent changed underneath us: help whoever did it and back off
+		help(op.p.update.get());
+		unflag(op.gp, DFLAG, op);
+		return false;
+	}
+
+	private void helpMarked(DeleteInfo op) {
+		Node other = op.p.right.get() == op.l ? op.p.left.get() : op.p.right.get();
+		casChild(op.gp, op.p, other);
+		unflag(op.gp, DFLAG, op);
+	}
+
+	private void unflag(Internal node, int state, Info op) {
+		Update current = node.update.get();
+		if (current.state == state && current.info == op) {
+			node.update.compareAndSet(current, new Update(CLEAN, op));
+		}
+	}
+
+	private void casChild(Internal parent, Node old, Node child) {
+		if (compare(child.key, child.inf, parent) < 0) {
+			parent.left.compareAndSet(old, child);
+		} else {
+			parent.right.compareAndSet(old, child);
+		}
+	}
+
+	private int compare(T key, int inf, Node n) {
+		if (inf != 0 || n.inf != 0) {
+			return inf - n.inf;
+		}
+		return key.compareTo(n.key);
+	}
+
+	/*
+	 * Wait-free, like contains(): walks the leaves in order without helping
+	 * any pending update. Keys never move between leaves, so a walk returns
+	 * them in ascending order.
+	 */
+	public Iterator<T> range(T from, T to) {
+		return new RangeIterator(from, to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		// internal nodes whose right subtree is still to come
+		private ArrayDeque<Internal> path = new ArrayDeque<Internal>();
+		private T from;
+		private T to;
+		private Node next;
+
+		RangeIterator(T from, T to) {
+			this.from = from;
+			this.to = to;
+			Node curr = root;
+			while (curr instanceof Internal) {
+				Internal internal = (Internal) curr;
+				if (from == null || compare(from, 0, internal) < 0) {
+					path.push(internal);
+					curr = internal.left.get();
+				} else {
+					curr = internal.right.get();
+				}
+			}
+			advance(curr);
+		}
+
+		private Node leftmost(Node curr) {
+			while (curr instanceof Internal) {
+				path.push((Internal) curr);
+				curr = ((Internal) curr).left.get();
+			}
+			return curr;
+		}
+
+		// Moves to the first leaf from leaf on that is in range, or to null
+		private void advance(Node leaf) {
+			while (true) {
+				// the sentinels are the largest keys, so nothing follows them
+				if (leaf.inf != 0 || (to != null && compare(to, 0, leaf) <= 0)) {
+					next = null;
+					return;
+				}
+				if (from == null || compare(from, 0, leaf) <= 0) {
+					next = leaf;
+					return;
+				}
+				if (path.isEmpty()) {
+					next = null;
+					return;
+				}
+				leaf = leftmost(path.pop().right.get());
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			if (path.isEmpty()) {
+				next = null;
+			} else {
+				advance(leftmost(path.pop().right.get()));
+			}
+			return t;
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		public T key;
+		public int inf;
+
+		Node(T k, int i) {
+			key = k;
+			inf = i;
+		}
+	}
+
+	private class Leaf extends Node {
+		Leaf(T k, int i) {
+			super(k, i);
+		}
+	}
+
+	private class Internal extends Node {
+		public AtomicReference<Node> left;
+		public AtomicReference<Node> right;
+		public AtomicReference<Update> update;
+
+		Internal(T k, int i, Node l, Node r) {
+			super(k, i);
+			left = new AtomicReference<Node>(l);
+			right = new AtomicReference<Node>(r);
+			update = new AtomicReference<Update>(new Update(CLEAN, null));
+		}
+	}
+
+	private class Update {
+		public int state;
+		public Info info;
+
+		Update(int s, Info i) {
+			state = s;
+			info = i;
+		}
+	}
+
+	private class Info {
+	}
+
+	private class InsertInfo extends Info {
+		public Internal p;
+		public Leaf l;
+		public Internal newInternal;
+
+		InsertInfo(Internal p, Leaf l, Internal newInternal) {
+			this.p = p;
+			this.l = l;
+			this.newInternal = newInternal;
+		}
+	}
+
+	private class DeleteInfo extends Info {
+		public Internal gp;
+		public Internal p;
+		public Leaf l;
+		public Update pupdate;
+
+		DeleteInfo(Internal gp, Internal p, Leaf l, Update pupdate) {
+			this.gp = gp;
+			this.p = p;
+			this.l = l;
+			this.pupdate = pupdate;
+		}
+	}
+
+	private class Search {
+		public Internal gp;
+		public Internal p;
+		public Leaf l;
+		public Update gpupdate;
+		public Update pupdate;
+	}
+}
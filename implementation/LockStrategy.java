@@ -0,0 +1,30 @@
+package data_structures.implementation;
+
+/*
+ * The per-node lock of FineGrainedList and FineGrainedTree, chosen when the
+ * structure is constructed. See LockableNode for how each one is laid out.
+ */
+public enum LockStrategy {
+
+	// A ReentrantLock object per node; parks waiting threads
+	REENTRANT,
+
+	// Test-and-test-and-set on an int in the node; no extra object
+	SPIN,
+
+	// FIFO ticket lock packed into the same int; no extra object
+	TICKET,
+
+	// A StampedLock object per node, used for its write lock only
+	STAMPED;
+
+	// The strategy called name in any case, or null if there is none
+	public static LockStrategy parse(String name) {
+		for (LockStrategy strategy : values()) {
+			if (strategy.name().equalsIgnoreCase(name)) {
+				return strategy;
+			}
+		}
+		return null;
+	}
+}
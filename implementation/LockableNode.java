@@ -0,0 +1,138 @@
+package data_structures.implementation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+import data_structures.metrics.Metrics;
+
+/*
+ * Base class of nodes that carry their own lock. The structure passes its
+ * LockStrategy to every call rather than each node storing it, so a node
+ * adds just an int and a reference to its own fields; with compressed
+ * oops both usually fit into the padding of FineGrainedList's and
+ * FineGrainedTree's nodes.
+ *
+ * SPIN and TICKET keep all their state in that int and allocate nothing.
+ * The ticket lock hands out tickets from the high half and serves them
+ * from the low half, so at most 65535 threads may wait on one node. Both
+ * spin with onSpinWait() and yield now and then, so that a holder that
+ * has been descheduled by an oversubscribed run gets to finish.
+ *
+ * A queue lock such as MCS or CLH would spin on a per-waiter flag rather
+ * than on the shared int, but needs the holder's queue node again at
+ * unlock time, i.e. a second reference per node; the ticket lock gives
+ * the same first-come first-served handoff without it.
+ *
+ * Nodes that every operation touches, such as FineGrainedList's sentinels
+ * and FineGrainedTree's guard, are padded: 128 bytes of fields after the
+ * node's own keep the nodes allocated after it, which other threads lock,
+ * off its cache lines. With REENTRANT and STAMPED the lock state lives in
+ * the separate lock object, which the constructor allocates right after
+ * the node, so such a node allocates a second 128 bytes once this
+ * constructor has returned.
+ */
+abstract class LockableNode {
+
+	private static final VarHandle STATE;
+
+	static {
+		try {
+			STATE = MethodHandles.lookup().findVarHandle(LockableNode.class, "state", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static final int SERVING = 0xffff;
+	private static final int TICKET = 1 << 16;
+
+	// SPIN: 1 while held. TICKET: next ticket << 16 | ticket being served
+	private volatile int state;
+	// REENTRANT: a ReentrantLock. STAMPED: a StampedLock. Otherwise null
+	private final Object lock;
+
+	LockableNode(LockStrategy strategy) {
+		if (strategy == LockStrategy.REENTRANT) {
+			lock = new ReentrantLock();
+		} else if (strategy == LockStrategy.STAMPED) {
+			lock = new StampedLock();
+		} else {
+			lock = null;
+		}
+	}
+
+	final void acquire(LockStrategy strategy) {
+		switch (strategy) {
+		case REENTRANT:
+			Metrics.lock((Lock) lock);
+			break;
+		case SPIN:
+			if (STATE.compareAndSet(this, 0, 1)) {
+				Metrics.acquired();
+			} else {
+				long start = System.nanoTime();
+				int spins = 0;
+				do {
+					while (state != 0) {
+						pause(++spins);
+					}
+				} while (!STATE.compareAndSet(this, 0, 1));
+				Metrics.acquired(start);
+			}
+			break;
+		case TICKET:
+			int taken = (int) STATE.getAndAdd(this, TICKET);
+			int ticket = taken >>> 16;
+			if ((taken & SERVING) == ticket) {
+				Metrics.acquired();
+			} else {
+				long start = System.nanoTime();
+				int spins = 0;
+				while ((state & SERVING) != ticket) {
+					pause(++spins);
+				}
+				Metrics.acquired(start);
+			}
+			break;
+		case STAMPED:
+			StampedLock stamped = (StampedLock) lock;
+			if (stamped.tryWriteLock() != 0) {
+				Metrics.acquired();
+			} else {
+				long start = System.nanoTime();
+				stamped.writeLock();
+				Metrics.acquired(start);
+			}
+			break;
+		}
+	}
+
+	final void release(LockStrategy strategy) {
+		switch (strategy) {
+		case REENTRANT:
+			((Lock) lock).unlock();
+			break;
+		case SPIN:
+			STATE.setRelease(this, 0);
+			break;
+		case TICKET:
+			// only the holder moves the low half; keep it from carrying into the high one
+			STATE.getAndAdd(this, (state & SERVING) == SERVING ? -SERVING : 1);
+			break;
+		case STAMPED:
+			((StampedLock) lock).tryUnlockWrite();
+			break;
+		}
+	}
+
+	private static void pause(int spins) {
+		if ((spins & 1023) == 0) {
+			Thread.yield();
+		} else {
+			Thread.onSpinWait();
+		}
+	}
+}
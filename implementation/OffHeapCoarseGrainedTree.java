@@ -0,0 +1,248 @@
+package data_structures.implementation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import data_structures.IntSorted;
+
+/*
+ * CoarseGrainedTree with its nodes kept off the Java heap. Each node is a
+ * 12 byte record (key, left index, right index) in an arena of direct
+ * ByteBuffer chunks, so a tree of any size adds only the chunk table to the
+ * GC heap. Slots released by remove() go on a free list, threaded through
+ * the left field, and are reused by later adds.
+ */
+public class OffHeapCoarseGrainedTree implements IntSorted {
+
+	private static final int NIL = -1;
+	private static final int GUARD = 0;
+
+	private static final int KEY = 0;
+	private static final int LEFT = 4;
+	private static final int RIGHT = 8;
+	private static final int RECORD_SIZE = 12;
+
+	// 2^20 records, 12 MB, per chunk
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	private ByteBuffer[] chunks = new ByteBuffer[1];
+	private int nrAllocated;
+	private int freeList = NIL;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int size;
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public OffHeapCoarseGrainedTree(int innerWorkTime) {
+		allocate(0); // the guard; the root is always its left child
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(int t) {
+		int curr, next;
+		lock.writeLock().lock();
+		try {
+			if (left(GUARD) == NIL) {
+				setLeft(GUARD, allocate(t));
+			} else {
+				curr = GUARD;
+				next = left(GUARD);
+				while (next != NIL) {
+					curr = next;
+					next = t < key(curr) ? left(curr) : right(curr);
+				}
+				doWork();
+				if (t < key(curr)) {
+					setLeft(curr, allocate(t));
+				} else {
+					setRight(curr, allocate(t));
+				}
+			}
+			size++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(int t) {
+		int pred, curr;
+		boolean goLeft = true;
+		lock.writeLock().lock();
+		try {
+			if (left(GUARD) == NIL) {
+				return;
+			}
+			pred = GUARD;
+			curr = left(GUARD);
+			while (key(curr) != t
+					&& NIL != ((goLeft = t < key(curr)) ? left(curr) : right(curr))) {
+				pred = curr;
+				curr = goLeft ? left(curr) : right(curr);
+			}
+			doWork();
+			if (key(curr) != t) {
+				return;
+			}
+			removeNode(curr, pred, goLeft);
+			free(curr);
+			size--;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean contains(int t) {
+		int curr;
+		lock.readLock().lock();
+		try {
+			curr = left(GUARD);
+			while (curr != NIL && key(curr) != t) {
+				curr = t < key(curr) ? left(curr) : right(curr);
+			}
+			doWork();
+			return curr != NIL;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Same algorithm as CoarseGrainedTree.removeNode, on slot indices
+	private void removeNode(int toRemove, int parent, boolean isLeft) {
+		int pred;
+		int maxOfLeft;
+		int t;
+		if (left(toRemove) != NIL && right(toRemove) != NIL) {
+			pred = left(toRemove);
+			if (right(pred) == NIL) {
+				maxOfLeft = pred;
+				removeNode(maxOfLeft, toRemove, true);
+				setRight(maxOfLeft, right(toRemove));
+			} else {
+				maxOfLeft = right(pred);
+				while (right(maxOfLeft) != NIL) {
+					pred = maxOfLeft;
+					maxOfLeft = right(maxOfLeft);
+				}
+				removeNode(maxOfLeft, pred, false);
+				setLeft(maxOfLeft, left(toRemove));
+				setRight(maxOfLeft, right(toRemove));
+			}
+			t = maxOfLeft;
+		} else if (left(toRemove) != NIL) {
+			t = left(toRemove);
+		} else if (right(toRemove) != NIL) {
+			t = right(toRemove);
+		} else {
+			t = NIL;
+		}
+		if (isLeft) {
+			setLeft(parent, t);
+		} else {
+			setRight(parent, t);
+		}
+	}
+
+	private int allocate(int key) {
+		int slot;
+		if (freeList != NIL) {
+			slot = freeList;
+			freeList = left(slot);
+		} else {
+			slot = nrAllocated++;
+			int chunk = slot >>> CHUNK_BITS;
+			if (chunk == chunks.length) {
+				ByteBuffer[] newChunks = new ByteBuffer[chunks.length * 2];
+				System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+				chunks = newChunks;
+			}
+			if (chunks[chunk] == null) {
+				chunks[chunk] = ByteBuffer.allocateDirect((CHUNK_MASK + 1) * RECORD_SIZE)
+						.order(ByteOrder.nativeOrder());
+			}
+		}
+		setKey(slot, key);
+		setLeft(slot, NIL);
+		setRight(slot, NIL);
+		return slot;
+	}
+
+	private void free(int slot) {
+		setLeft(slot, freeList);
+		freeList = slot;
+	}
+
+	private int key(int slot) {
+		return chunks[slot >>> CHUNK_BITS].getInt((slot & CHUNK_MASK) * RECORD_SIZE + KEY);
+	}
+
+	private int left(int slot) {
+		return chunks[slot >>> CHUNK_BITS].getInt((slot & CHUNK_MASK) * RECORD_SIZE + LEFT);
+	}
+
+	private int right(int slot) {
+		return chunks[slot >>> CHUNK_BITS].getInt((slot & CHUNK_MASK) * RECORD_SIZE + RIGHT);
+	}
+
+	private void setKey(int slot, int key) {
+		chunks[slot >>> CHUNK_BITS].putInt((slot & CHUNK_MASK) * RECORD_SIZE + KEY, key);
+	}
+
+	private void setLeft(int slot, int left) {
+		chunks[slot >>> CHUNK_BITS].putInt((slot & CHUNK_MASK) * RECORD_SIZE + LEFT, left);
+	}
+
+	private void setRight(int slot, int right) {
+		chunks[slot >>> CHUNK_BITS].putInt((slot & CHUNK_MASK) * RECORD_SIZE + RIGHT, right);
+	}
+
+	public String toString() {
+		StringBuilder result = new StringBuilder("[");
+		int[] toProcess = new int[16];
+		int top = 0;
+		int currNode;
+		lock.readLock().lock();
+		try {
+			currNode = left(GUARD);
+			while (currNode != NIL || top > 0) {
+				while (currNode != NIL) {
+					if (top == toProcess.length) {
+						int[] bigger = new int[toProcess.length * 2];
+						System.arraycopy(toProcess, 0, bigger, 0, top);
+						toProcess = bigger;
+					}
+					toProcess[top++] = currNode;
+					currNode = left(currNode);
+				}
+				currNode = toProcess[--top];
+				if (result.length() > 1) {
+					result.append(", ");
+				}
+				result.append(key(currNode));
+				currNode = right(currNode);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result.append("]").toString();
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+}
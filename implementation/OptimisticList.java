@@ -0,0 +1,194 @@
+package data_structures.implementation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import data_structures.Sorted;
+
+public class OptimisticList<T extends Comparable<T>> implements Sorted<T> {
+
+	private Node tail = new Node(null, null);
+	private Node head = new Node(null, tail);
+	private int innerWorkTime;
+	private boolean doInnerWork;
+
+	public OptimisticList(int innerWorkTime) {
+		this.innerWorkTime = innerWorkTime;
+		this.doInnerWork = innerWorkTime > 0;
+	}
+
+	public void add(T t) {
+		while (true) {
+			Node pred = head;
+			Node curr = pred.next;
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = curr.next;
+			}
+			pred.lock.lock();
+			try {
+				curr.lock.lock();
+				try {
+					if (validate(pred, curr)) {
+						doWork();
+						pred.next = new Node(t, curr);
+						return;
+					}
+				} finally {
+					curr.lock.unlock();
+				}
+			} finally {
+				pred.lock.unlock();
+			}
+		}
+	}
+
+	public void remove(T t) {
+		while (true) {
+			Node pred = head;
+			Node curr = pred.next;
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = curr.next;
+			}
+			pred.lock.lock();
+			try {
+				curr.lock.lock();
+				try {
+					if (validate(pred, curr)) {
+						doWork();
+						if (curr != tail && t.compareTo(curr.key) == 0) {
+							pred.next = curr.next;
+						}
+						return;
+					}
+				} finally {
+					curr.lock.unlock();
+				}
+			} finally {
+				pred.lock.unlock();
+			}
+		}
+	}
+
+	public boolean contains(T t) {
+		while (true) {
+			Node pred = head;
+			Node curr = pred.next;
+			while (curr != tail && t.compareTo(curr.key) > 0) {
+				pred = curr;
+				curr = curr.next;
+			}
+			pred.lock.lock();
+			try {
+				curr.lock.lock();
+				try {
+					if (validate(pred, curr)) {
+						doWork();
+						return curr != tail && t.compareTo(curr.key) == 0;
+					}
+				} finally {
+					curr.lock.unlock();
+				}
+			} finally {
+				pred.lock.unlock();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Node curr = head.next; curr != tail; curr = curr.next) {
+			size++;
+		}
+		return size;
+	}
+
+	/*
+	 * Checks, with pred and curr locked, that pred is still reachable and
+	 * still points to curr.
+	 */
+	private boolean validate(Node pred, Node curr) {
+		Node node = head;
+		while (node != tail) {
+			if (node == pred) {
+				return pred.next == curr;
+			}
+			node = node.next;
+		}
+		return false;
+	}
+
+	/*
+	 * Walks the live list without locking. Removal leaves the next pointer
+	 * of the removed node in place, so a walk that is standing on it
+	 * carries on; it may still return that key.
+	 */
+	public Iterator<T> range(T from, T to) {
+		Node curr = head.next;
+		while (curr != tail && from != null && curr.key.compareTo(from) < 0) {
+			curr = curr.next;
+		}
+		return new RangeIterator(curr, to);
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+
+	private class RangeIterator implements Iterator<T> {
+		private Node next;
+		private T to;
+
+		RangeIterator(Node first, T to) {
+			this.to = to;
+			this.next = skip(first);
+		}
+
+		// curr, or null once past the range
+		private Node skip(Node curr) {
+			return curr == tail || (to != null && curr.key.compareTo(to) >= 0) ? null : curr;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T t = next.key;
+			next = skip(next.next);
+			return t;
+		}
+	}
+
+	private void doWork() {
+		if (doInnerWork) {
+			long end = System.nanoTime() + innerWorkTime * 1000;
+			while (System.nanoTime() < end); // busy wait
+		}
+	}
+
+	private class Node {
+		private Lock lock = new ReentrantLock();
+
+		public volatile Node next;
+		public T key;
+
+		public Node(T k, Node n) {
+			this.key = k;
+			this.next = n;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package data_structures.implementation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import data_structures.Sorted;
+
+/*
+ * Range-partitions the key space over a number of independent Sorted
+ * instances. Shard i holds the keys k with splits[i - 1] <= k < splits[i],
+ * so every shard is itself in order and the shards are in order relative
+ * to each other: walking them one after the other visits all keys in
+ * order. Adds and removes of keys in different shards never touch the
+ * same lock or node, so writes scale with the number of shards as long as
+ * the keys are spread over them.
+ *
+ * There is no order across shards at any single instant: size() and
+ * range() visit the shards one at a time, so they are exact only while
+ * nobody is modifying the structure, and range() is exactly as consistent
+ * as the shards' own range().
+ */
+public class ShardedSorted<T extends Comparable<T>> implements Sorted<T> {
+
+	private List<Sorted<T>> shards;
+	private List<T> splits;
+
+	/*
+	 * splits must be ascending and have one element fewer than shards.
+	 */
+	public ShardedSorted(List<Sorted<T>> shards, List<T> splits) {
+		if (splits.size() != shards.size() - 1) {
+			throw new IllegalArgumentException("need " + (shards.size() - 1) + " split points, got " + splits.size());
+		}
+		for (int i = 1; i < splits.size(); i++) {
+			if (splits.get(i - 1).compareTo(splits.get(i)) >= 0) {
+				throw new IllegalArgumentException("split points must be ascending");
+			}
+		}
+		this.shards = new ArrayList<Sorted<T>>(shards);
+		this.splits = new ArrayList<T>(splits);
+	}
+
+	/*
+	 * Splits [from, to) into nrShards ranges of equal width, each backed by
+	 * a new instance from newShard. Keys outside [from, to) go to the first
+	 * or last shard.
+	 */
+	public static ShardedSorted<Integer> ofRange(int nrShards, int from, int to, Supplier<Sorted<Integer>> newShard) {
+		if (nrShards < 1 || ((long) to - from) / nrShards < 1) {
+			throw new IllegalArgumentException("cannot split [" + from + ", " + to + ") into " + nrShards + " shards");
+		}
+		long width = ((long) to - from) / nrShards;
+		List<Sorted<Integer>> shards = new ArrayList<Sorted<Integer>>(nrShards);
+		List<Integer> splits = new ArrayList<Integer>(nrShards - 1);
+		for (int i = 0; i < nrShards; i++) {
+			shards.add(newShard.get());
+			if (i > 0) {
+				splits.add((int) (from + i * width));
+			}
+		}
+		return new ShardedSorted<Integer>(shards, splits);
+	}
+
+	public void add(T t) {
+		shards.get(shardOf(t)).add(t);
+	}
+
+	public void remove(T t) {
+		shards.get(shardOf(t)).remove(t);
+	}
+
+	public boolean contains(T t) {
+		return shards.get(shardOf(t)).contains(t);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Sorted<T> shard : shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	/*
+	 * The ascending batch falls apart into one consecutive run per shard;
+	 * each run is handed on as a single batch, so the shards' own batch
+	 * merges still apply.
+	 */
+	public void addAll(List<T> ts) {
+		int from = 0;
+		while (from < ts.size()) {
+			int shard = shardOf(ts.get(from));
+			int to = runEnd(ts, from, shard);
+			shards.get(shard).addAll(ts.subList(from, to));
+			from = to;
+		}
+	}
+
+	public void removeAll(List<T> ts) {
+		int from = 0;
+		while (from < ts.size()) {
+			int shard = shardOf(ts.get(from));
+			int to = runEnd(ts, from, shard);
+			shards.get(shard).removeAll(ts.subList(from, to));
+			from = to;
+		}
+	}
+
+	// Index of the first element after from that does not belong to shard
+	private int runEnd(List<T> ts, int from, int shard) {
+		int to = from + 1;
+		if (shard == splits.size()) {
+			return ts.size();
+		}
+		T limit = splits.get(shard);
+		while (to < ts.size() && ts.get(to).compareTo(limit) < 0) {
+			to++;
+		}
+		return to;
+	}
+
+	// Number of split points <= t, by binary search
+	private int shardOf(T t) {
+		int low = 0;
+		int high = splits.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (t.compareTo(splits.get(mid)) < 0) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Chains the ranges of the shards that overlap [from, to), asking each
+	 * shard only when the previous one is exhausted.
+	 */
+	public Iterator<T> range(T from, T to) {
+		int first = from == null ? 0 : shardOf(from);
+		int last = to == null ? shards.size() - 1 : shardOf(to);
+		return new Iterator<T>() {
+			private int shard = first;
+			private Iterator<T> current = shards.get(first).range(from, to);
+
+			public boolean hasNext() {
+				while (!current.hasNext() && shard < last) {
+					shard++;
+					current = shards.get(shard).range(from, to);
+				}
+				return current.hasNext();
+			}
+
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+	}
+
+	public String toString() {
+		StringBuilder str = new StringBuilder("[");
+		for (T t : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(t);
+		}
+		return str.append("]").toString();
+	}
+}
@@ -0,0 +1,96 @@
+package data_structures.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Log-linear histogram in the style of HdrHistogram: every power of two is
+ * split into 16 linear sub-buckets, so a recorded value is off by at most
+ * 1/16 (about 6%). Each thread records into its own stripe of counts and
+ * the stripes are only summed when the histogram is read, so recording
+ * never contends and never allocates after the first call on a thread.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NR_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private ConcurrentLinkedQueue<long[]> stripes = new ConcurrentLinkedQueue<long[]>();
+	private ThreadLocal<long[]> stripe = ThreadLocal.withInitial(() -> {
+		long[] counts = new long[NR_BUCKETS];
+		stripes.add(counts);
+		return counts;
+	});
+
+	public void record(long value) {
+		stripe.get()[index(value)]++;
+	}
+
+	public void reset() {
+		for (long[] counts : stripes) {
+			Arrays.fill(counts, 0);
+		}
+	}
+
+	public long count() {
+		long count = 0;
+		for (long c : merge()) {
+			count += c;
+		}
+		return count;
+	}
+
+	/*
+	 * Returns the upper bound of the bucket holding the value at the given
+	 * percentile (0-100), or 0 if nothing was recorded.
+	 */
+	public long percentile(double percentile) {
+		long[] counts = merge();
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return highestValue(i);
+			}
+		}
+		return 0;
+	}
+
+	public long max() {
+		return percentile(100);
+	}
+
+	// Only exact once all recording threads have finished
+	private long[] merge() {
+		long[] merged = new long[NR_BUCKETS];
+		for (long[] counts : stripes) {
+			for (int i = 0; i < NR_BUCKETS; i++) {
+				merged[i] += counts[i];
+			}
+		}
+		return merged;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) Math.max(value, 0);
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,63 @@
+package data_structures.metrics;
+
+import java.util.Iterator;
+import java.util.List;
+
+import data_structures.Sorted;
+
+/*
+ * Decorator that records the latency of every call into the Metrics
+ * histograms. Batch calls are recorded as one sample each.
+ */
+public class MeasuredSorted<T extends Comparable<T>> implements Sorted<T> {
+
+	private Sorted<T> sorted;
+
+	public MeasuredSorted(Sorted<T> sorted) {
+		this.sorted = sorted;
+	}
+
+	public void add(T t) {
+		long start = System.nanoTime();
+		sorted.add(t);
+		Metrics.ADD.record(System.nanoTime() - start);
+	}
+
+	public void remove(T t) {
+		long start = System.nanoTime();
+		sorted.remove(t);
+		Metrics.REMOVE.record(System.nanoTime() - start);
+	}
+
+	public boolean contains(T t) {
+		long start = System.nanoTime();
+		boolean found = sorted.contains(t);
+		Metrics.CONTAINS.record(System.nanoTime() - start);
+		return found;
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	public void addAll(List<T> ts) {
+		long start = System.nanoTime();
+		sorted.addAll(ts);
+		Metrics.BATCH.record(System.nanoTime() - start);
+	}
+
+	public void removeAll(List<T> ts) {
+		long start = System.nanoTime();
+		sorted.removeAll(ts);
+		Metrics.BATCH.record(System.nanoTime() - start);
+	}
+
+	// Not timed: the cost of a scan is spent in the caller's iteration
+	public Iterator<T> range(T from, T to) {
+		return sorted.range(from, to);
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+}
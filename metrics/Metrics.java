@@ -0,0 +1,212 @@
+package data_structures.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Process-wide counters that the implementations update when metrics are
+ * enabled. All counters are LongAdders, which stripe their cells across
+ * threads, so instrumentation does not add a shared hot spot of its own.
+ * When disabled, every hook costs one read of a static boolean.
+ */
+public class Metrics {
+
+	private static boolean enabled;
+
+	private static final LongAdder lockAcquisitions = new LongAdder();
+	private static final LongAdder contendedLockAcquisitions = new LongAdder();
+	private static final LongAdder lockBlockedNanos = new LongAdder();
+	private static final LongAdder nodesTraversed = new LongAdder();
+	private static final LongAdder casRetries = new LongAdder();
+	private static final LongAdder eliminationAttempts = new LongAdder();
+	private static final LongAdder eliminations = new LongAdder();
+
+	public static final LatencyHistogram ADD = new LatencyHistogram();
+	public static final LatencyHistogram REMOVE = new LatencyHistogram();
+	public static final LatencyHistogram CONTAINS = new LatencyHistogram();
+	public static final LatencyHistogram BATCH = new LatencyHistogram();
+
+	/*
+	 * Must be called before the worker threads are started.
+	 */
+	public static void enable() {
+		enabled = true;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/*
+	 * Acquires lock, counting the acquisition and, if it is already held,
+	 * the time spent waiting for it.
+	 */
+	public static void lock(Lock lock) {
+		if (!enabled) {
+			lock.lock();
+			return;
+		}
+		lockAcquisitions.increment();
+		if (!lock.tryLock()) {
+			long start = System.nanoTime();
+			lock.lock();
+			lockBlockedNanos.add(System.nanoTime() - start);
+			contendedLockAcquisitions.increment();
+		}
+	}
+
+	/*
+	 * For locks that are not Lock objects: counts an acquisition that got
+	 * the lock at once.
+	 */
+	public static void acquired() {
+		if (enabled) {
+			lockAcquisitions.increment();
+		}
+	}
+
+	/*
+	 * Counts an acquisition that had to wait since start, a System.nanoTime().
+	 */
+	public static void acquired(long start) {
+		if (enabled) {
+			lockAcquisitions.increment();
+			lockBlockedNanos.add(System.nanoTime() - start);
+			contendedLockAcquisitions.increment();
+		}
+	}
+
+	public static void traversed(int nodes) {
+		if (enabled) {
+			nodesTraversed.add(nodes);
+		}
+	}
+
+	public static void casRetry() {
+		if (enabled) {
+			casRetries.increment();
+		}
+	}
+
+	// An add or remove that tried elimination, and whether it was eliminated
+	public static void elimination(boolean succeeded) {
+		if (enabled) {
+			eliminationAttempts.increment();
+			if (succeeded) {
+				eliminations.increment();
+			}
+		}
+	}
+
+	public static void reset() {
+		lockAcquisitions.reset();
+		contendedLockAcquisitions.reset();
+		lockBlockedNanos.reset();
+		nodesTraversed.reset();
+		casRetries.reset();
+		eliminationAttempts.reset();
+		eliminations.reset();
+		ADD.reset();
+		REMOVE.reset();
+		CONTAINS.reset();
+		BATCH.reset();
+	}
+
+	public static String report() {
+		long operations = ADD.count() + REMOVE.count() + CONTAINS.count();
+		StringBuilder sb = new StringBuilder();
+		sb.append("operation      count     p50(ns)     p90(ns)     p99(ns)   p99.9(ns)     max(ns)\n");
+		appendHistogram(sb, "add", ADD);
+		appendHistogram(sb, "remove", REMOVE);
+		appendHistogram(sb, "contains", CONTAINS);
+		appendHistogram(sb, "batch", BATCH);
+		sb.append(String.format("lock acquisitions: %d (%d contended, %.3f ms blocked)\n",
+				lockAcquisitions.sum(), contendedLockAcquisitions.sum(), lockBlockedNanos.sum() / 1e6));
+		sb.append(String.format("nodes traversed: %d (%.1f per operation)\n",
+				nodesTraversed.sum(), operations == 0 ? 0.0 : (double) nodesTraversed.sum() / operations));
+		sb.append(String.format("CAS retries: %d\n", casRetries.sum()));
+		long attempts = eliminationAttempts.sum();
+		if (attempts > 0) {
+			sb.append(String.format("eliminated: %d of %d adds and removes (%.1f%%)\n",
+					eliminations.sum(), attempts, 100.0 * eliminations.sum() / attempts));
+		}
+		return sb.toString();
+	}
+
+	private static void appendHistogram(StringBuilder sb, String name, LatencyHistogram histogram) {
+		long count = histogram.count();
+		if (count == 0) {
+			return;
+		}
+		sb.append(String.format("%-9s %10d %11d %11d %11d %11d %11d\n", name, count,
+				histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+				histogram.percentile(99.9), histogram.max()));
+	}
+
+	public static void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+					new ObjectName("data_structures:type=Metrics"));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static class Bean implements MetricsMXBean {
+		public long getLockAcquisitions() {
+			return lockAcquisitions.sum();
+		}
+
+		public long getContendedLockAcquisitions() {
+			return contendedLockAcquisitions.sum();
+		}
+
+		public long getLockBlockedNanos() {
+			return lockBlockedNanos.sum();
+		}
+
+		public long getNodesTraversed() {
+			return nodesTraversed.sum();
+		}
+
+		public long getCasRetries() {
+			return casRetries.sum();
+		}
+
+		public long getEliminationAttempts() {
+			return eliminationAttempts.sum();
+		}
+
+		public long getEliminations() {
+			return eliminations.sum();
+		}
+
+		public long getAddCount() {
+			return ADD.count();
+		}
+
+		public long getAddP99Nanos() {
+			return ADD.percentile(99);
+		}
+
+		public long getRemoveCount() {
+			return REMOVE.count();
+		}
+
+		public long getRemoveP99Nanos() {
+			return REMOVE.percentile(99);
+		}
+
+		public long getContainsCount() {
+			return CONTAINS.count();
+		}
+
+		public long getContainsP99Nanos() {
+			return CONTAINS.percentile(99);
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package data_structures.metrics;
+
+/*
+ * JMX view of Metrics, registered as data_structures:type=Metrics.
+ */
+public interface MetricsMXBean {
+	public long getLockAcquisitions();
+	public long getContendedLockAcquisitions();
+	public long getLockBlockedNanos();
+	public long getNodesTraversed();
+	public long getCasRetries();
+	public long getEliminationAttempts();
+	public long getEliminations();
+	public long getAddCount();
+	public long getAddP99Nanos();
+	public long getRemoveCount();
+	public long getRemoveP99Nanos();
+	public long getContainsCount();
+	public long getContainsP99Nanos();
+}
@@ -0,0 +1,193 @@
+package data_structures.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import data_structures.Sorted;
+import data_structures.metrics.Metrics;
+
+/*
+ * Decorator that keeps a Sorted<Integer> recoverable from a directory
+ * holding a SnapshotFile ("snapshot") and the UpdateLog of the updates
+ * since ("log"). Every add and remove is appended to the log and then
+ * applied, so no update becomes visible without being logged;
+ * checkpoint() replaces both files by a fresh snapshot and an empty log,
+ * so recovery replays only what happened since the last checkpoint.
+ *
+ * Once writing the log has failed, updates that were applied earlier may
+ * be missing from it, so all further updates throw until a checkpoint()
+ * succeeds and has made the contents durable again.
+ *
+ * Updates of different keys commute, so they only need to reach the log
+ * in the same order as the structure for the same key: an update holds
+ * one of STRIPES locks, picked by its key, while it applies and logs.
+ * Lookups go straight to the wrapped structure.
+ */
+public class DurableSorted implements Sorted<Integer> {
+
+	private static final int STRIPES = 64;
+
+	private Sorted<Integer> sorted;
+	private Path snapshotFile;
+	private Path logFile;
+	private long generation;
+	private UpdateLog log;
+	// the log error that stops updates, until a checkpoint succeeds
+	private volatile IOException failure;
+	// updates share it, checkpoint() takes it exclusively
+	private ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+	private Lock[] stripes = new Lock[STRIPES];
+
+	private DurableSorted(Sorted<Integer> sorted, Path directory) {
+		this.sorted = sorted;
+		this.snapshotFile = directory.resolve("snapshot");
+		this.logFile = directory.resolve("log");
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/*
+	 * Loads the snapshot in directory, if any, into sorted, which must be
+	 * empty, replays the log on top and from then on logs every update.
+	 * If the log had any records, a checkpoint folds them into a new
+	 * snapshot first.
+	 */
+	public static DurableSorted recover(Sorted<Integer> sorted, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		DurableSorted durable = new DurableSorted(sorted, directory);
+		if (Files.exists(durable.snapshotFile)) {
+			SnapshotFile snapshot = SnapshotFile.open(durable.snapshotFile);
+			sorted.addAll(snapshot.keys());
+			durable.generation = snapshot.generation();
+		}
+		if (UpdateLog.replay(durable.logFile, durable.generation, sorted) > 0) {
+			durable.checkpoint(); // keeps the replayed log until the snapshot is written
+		} else {
+			durable.log = UpdateLog.create(durable.logFile, durable.generation);
+		}
+		return durable;
+	}
+
+	public void add(Integer t) {
+		update(UpdateLog.ADD, t);
+	}
+
+	public void remove(Integer t) {
+		update(UpdateLog.REMOVE, t);
+	}
+
+	private void update(byte op, Integer t) {
+		Lock stripe = stripes[(t.hashCode() & Integer.MAX_VALUE) % STRIPES];
+		Metrics.lock(checkpointLock.readLock());
+		try {
+			if (failure != null) {
+				throw new UncheckedIOException("the update log failed; checkpoint() to resume", failure);
+			}
+			Metrics.lock(stripe);
+			try {
+				log.append(op, t);
+				if (op == UpdateLog.ADD) {
+					sorted.add(t);
+				} else {
+					sorted.remove(t);
+				}
+			} finally {
+				stripe.unlock();
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw new UncheckedIOException(e);
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+	}
+
+	public boolean contains(Integer t) {
+		return sorted.contains(t);
+	}
+
+	public int size() {
+		return sorted.size();
+	}
+
+	public Iterator<Integer> range(Integer from, Integer to) {
+		return sorted.range(from, to);
+	}
+
+	/*
+	 * Writes a snapshot of the current contents and starts an empty log.
+	 * Updates wait until it is done, so the snapshot is exact; lookups do
+	 * not wait. If writing the snapshot fails, the previous snapshot and log
+	 * stay in use. Once the new snapshot is in place the old log no longer
+	 * continues it, so if the new log cannot be created, updates throw
+	 * until a later checkpoint() succeeds.
+	 */
+	public void checkpoint() throws IOException {
+		Metrics.lock(checkpointLock.writeLock());
+		try {
+			long next = generation + 1;
+			SnapshotFile.write(sorted, next, snapshotFile);
+			generation = next;
+			UpdateLog old = log;
+			try {
+				log = UpdateLog.create(logFile, next);
+			} catch (IOException e) {
+				log = null;
+				failure = e;
+				throw e;
+			} finally {
+				if (old != null) {
+					closeStale(old);
+				}
+			}
+			failure = null;
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
+	}
+
+	// Its records are all in the new snapshot, so an error closing it does not matter
+	private static void closeStale(UpdateLog old) {
+		try {
+			old.close();
+		} catch (IOException e) {
+			// nothing lost
+		}
+	}
+
+	// Forces the logged updates to disk
+	public void sync() throws IOException {
+		Metrics.lock(checkpointLock.readLock());
+		try {
+			if (failure != null) {
+				throw new IOException("the update log failed; checkpoint() to resume", failure);
+			}
+			try {
+				log.sync();
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		} finally {
+			checkpointLock.readLock().unlock();
+		}
+	}
+
+	public void close() throws IOException {
+		if (log != null) {
+			log.close();
+		}
+	}
+
+	public String toString() {
+		return sorted.toString();
+	}
+}
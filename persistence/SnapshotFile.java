@@ -0,0 +1,125 @@
+package data_structures.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import data_structures.Sorted;
+
+/*
+ * Ordered snapshot of a Sorted<Integer> in a compact binary file: a
+ * 16-byte header (magic, key count, generation) followed by the keys as
+ * little-endian ints in ascending order, duplicates included.
+ *
+ * A snapshot is read by mapping the file; keys() is a view of the mapping,
+ * so handing it to addAll() reloads a structure without parsing or copying
+ * the file first. An empty CoarseGrainedTree builds itself perfectly
+ * balanced from it and the lists link it up in one pass. One mapping
+ * holds at most 2 GB, about 500 million keys.
+ */
+public class SnapshotFile {
+
+	private static final int MAGIC = 0x50414e53; // "SNAP"
+	private static final int HEADER = 16;
+
+	private long generation;
+	private IntBuffer keys;
+
+	private SnapshotFile(long generation, IntBuffer keys) {
+		this.generation = generation;
+		this.keys = keys;
+	}
+
+	/*
+	 * Writes the keys of sorted to file and returns how many there were.
+	 * The file is written under a temporary name, forced to disk and then
+	 * renamed over file, so a crash leaves either the old snapshot or the
+	 * new one. The keys are those that sorted's iterator returns, so the
+	 * snapshot is only exact if nobody modifies sorted meanwhile.
+	 */
+	public static int write(Sorted<Integer> sorted, long generation, Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		int count = 0;
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			channel.position(HEADER);
+			for (int key : sorted) {
+				if (!buffer.hasRemaining()) {
+					drain(buffer, channel);
+				}
+				buffer.putInt(key);
+				count++;
+			}
+			drain(buffer, channel);
+			buffer.putInt(MAGIC).putInt(count).putLong(generation).flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, HEADER - buffer.remaining());
+			}
+			channel.force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return count;
+	}
+
+	private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*
+	 * Maps file read-only. The mapping stays valid after the channel is
+	 * closed, until the SnapshotFile is garbage collected.
+	 */
+	public static SnapshotFile open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER) {
+				throw new IOException(file + " is not a snapshot");
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			int count = map.getInt(4);
+			if (map.getInt(0) != MAGIC || count < 0 || channel.size() != HEADER + 4L * count) {
+				throw new IOException(file + " is not a snapshot");
+			}
+			IntBuffer keys = map.position(HEADER).slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			return new SnapshotFile(map.getLong(8), keys);
+		}
+	}
+
+	public long generation() {
+		return generation;
+	}
+
+	public int size() {
+		return keys.limit();
+	}
+
+	// The keys in ascending order, read from the mapping on every get()
+	public List<Integer> keys() {
+		return new Keys();
+	}
+
+	private class Keys extends AbstractList<Integer> implements RandomAccess {
+		public Integer get(int index) {
+			return keys.get(index);
+		}
+
+		public int size() {
+			return keys.limit();
+		}
+	}
+}
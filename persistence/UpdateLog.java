@@ -0,0 +1,127 @@
+package data_structures.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import data_structures.Sorted;
+
+/*
+ * Append-only log of the adds and removes made since a snapshot. A 12-byte
+ * header (magic, generation) is followed by 5-byte records: the operation
+ * and the key as a little-endian int. The generation ties a log to the
+ * snapshot it continues, so a log left over from before the last snapshot
+ * is recognized and ignored.
+ *
+ * Records are buffered and reach the file when the buffer fills up or on
+ * sync(); a crash loses the records since the last sync(). A record cut
+ * short by a crash is ignored on replay.
+ */
+public class UpdateLog {
+
+	public static final byte ADD = 0;
+	public static final byte REMOVE = 1;
+
+	private static final int MAGIC = 0x474f4c55; // "ULOG"
+	private static final int HEADER = 12;
+	private static final int RECORD = 5;
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+	private UpdateLog(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/*
+	 * Starts an empty log for generation. Like SnapshotFile.write(), it is
+	 * written under a temporary name and renamed over file, so until it
+	 * returns, file still holds the previous log, and an UpdateLog still
+	 * open on that one can be closed afterwards without touching the new
+	 * one.
+	 */
+	public static UpdateLog create(Path file, long generation) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			UpdateLog log = new UpdateLog(channel);
+			log.buffer.putInt(MAGIC).putLong(generation);
+			log.sync();
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return log;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public synchronized void append(byte op, int key) throws IOException {
+		if (buffer.remaining() < RECORD) {
+			drain();
+		}
+		buffer.put(op).putInt(key);
+	}
+
+	// Writes out the buffer and forces the file to disk
+	public synchronized void sync() throws IOException {
+		drain();
+		channel.force(false);
+	}
+
+	public synchronized void close() throws IOException {
+		sync();
+		channel.close();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*
+	 * Applies the records in file to sorted, if file exists and is the log
+	 * of generation, and returns how many there were.
+	 */
+	public static long replay(Path file, long generation, Sorted<Integer> sorted) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER) {
+				return 0; // the header never made it to disk
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not an update log");
+			}
+			if (map.getLong(4) != generation) {
+				return 0;
+			}
+			long records = (channel.size() - HEADER) / RECORD;
+			for (int i = 0; i < records; i++) {
+				int position = HEADER + i * RECORD;
+				byte op = map.get(position);
+				int key = map.getInt(position + 1);
+				if (op == ADD) {
+					sorted.add(key);
+				} else if (op == REMOVE) {
+					sorted.remove(key);
+				} else {
+					throw new IOException(file + ": bad record at " + position);
+				}
+			}
+			return records;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package data_structures.workload;
+
+import java.util.Random;
+
+/*
+ * A hot set of hotKeyPercentage percent of the keys receives
+ * hotOpPercentage percent of the accesses; both sets are uniform inside.
+ * The hot set is the lowest keys of the range.
+ */
+public class HotspotKeys implements KeyDistribution {
+
+	private int range;
+	private int hotKeys;
+	private int hotOpPercentage;
+
+	public HotspotKeys(int range, int hotKeyPercentage, int hotOpPercentage) {
+		this.range = range;
+		this.hotKeys = Math.max(1, (int) ((long) range * hotKeyPercentage / 100));
+		this.hotOpPercentage = hotOpPercentage;
+	}
+
+	public int next(Random random) {
+		if (hotKeys == range || random.nextInt(100) < hotOpPercentage) {
+			return random.nextInt(hotKeys);
+		}
+		return hotKeys + random.nextInt(range - hotKeys);
+	}
+}
@@ -0,0 +1,11 @@
+package data_structures.workload;
+
+import java.util.Random;
+
+/*
+ * Source of keys for generated operation streams. Implementations are
+ * only called while streams are generated, never in the timed region.
+ */
+public interface KeyDistribution {
+	public int next(Random random);
+}
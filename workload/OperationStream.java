@@ -0,0 +1,15 @@
+package data_structures.workload;
+
+/*
+ * Pre-generated operations for one worker: ops[i] is one of the Workload
+ * operation codes and keys[i] its argument.
+ */
+public class OperationStream {
+	public final byte[] ops;
+	public final int[] keys;
+
+	public OperationStream(byte[] ops, int[] keys) {
+		this.ops = ops;
+		this.keys = keys;
+	}
+}
@@ -0,0 +1,21 @@
+package data_structures.workload;
+
+import java.util.Random;
+
+// Ascending keys from start, wrapping around at range
+public class SequentialKeys implements KeyDistribution {
+
+	private int range;
+	private int next;
+
+	public SequentialKeys(int start, int range) {
+		this.range = range;
+		this.next = start % range;
+	}
+
+	public int next(Random random) {
+		int key = next;
+		next = (next + 1) % range;
+		return key;
+	}
+}
@@ -0,0 +1,17 @@
+package data_structures.workload;
+
+import java.util.Random;
+
+// Every key in [0, range) is equally likely
+public class UniformKeys implements KeyDistribution {
+
+	private int range;
+
+	public UniformKeys(int range) {
+		this.range = range;
+	}
+
+	public int next(Random random) {
+		return random.nextInt(range);
+	}
+}
@@ -0,0 +1,201 @@
+package data_structures.workload;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Describes a mixed workload and generates it into per-thread operation
+ * streams before the run starts. Configured from Main's command line:
+ *
+ *   dist=uniform | sequential | zipf[:<theta>] | hotspot[:<key%>:<op%>]
+ *   range=<n>        keys are drawn from [0, n); default nrItems
+ *   prefill=<n>      distinct keys added before the timed region; default
+ *                    0, or half the range for structures without duplicates
+ *   mix=<a>:<r>:<c>  percentages of add, remove and contains operations
+ *
+ * In a structure that keeps duplicates every add inserts, so removes of
+ * keys drawn like the adds would mostly miss and the size would keep
+ * growing. There a remove takes a key that its stream added earlier and
+ * has not removed yet, and only draws one if there is none. With equal
+ * add and remove percentages such a remove becomes an add instead, and
+ * the stream ends by removing what it still holds, so every pass of it,
+ * including each replay in duration mode, returns the structure to its
+ * prefill. A set instead settles where a key is as likely to be present
+ * as not, at half the range, whatever the distribution; removes there are
+ * drawn like the adds and the default prefill starts it at that size.
+ */
+public class Workload {
+
+	public static final byte ADD = 0;
+	public static final byte REMOVE = 1;
+	public static final byte CONTAINS = 2;
+
+	private boolean enabled;
+	private String distribution = "uniform";
+	private double theta = 0.99;
+	private int hotKeyPercentage = 10;
+	private int hotOpPercentage = 90;
+	private int range;
+	private int prefill = -1; // not given
+	private int addPercentage = 50;
+	private int removePercentage = 50;
+
+	/*
+	 * Applies arg if it is a workload option. Returns false if it is not
+	 * one; throws IllegalArgumentException if it is one but is malformed.
+	 */
+	public boolean parseOption(String arg) {
+		if (arg.startsWith("dist=")) {
+			String[] parts = arg.substring("dist=".length()).split(":");
+			distribution = parts[0];
+			if (distribution.equals("zipf")) {
+				if (parts.length > 1) {
+					theta = Double.parseDouble(parts[1]);
+				}
+				if (theta <= 0 || theta >= 1) {
+					throw new IllegalArgumentException("zipf theta must be in (0, 1)");
+				}
+			} else if (distribution.equals("hotspot")) {
+				if (parts.length == 3) {
+					hotKeyPercentage = Integer.parseInt(parts[1]);
+					hotOpPercentage = Integer.parseInt(parts[2]);
+				} else if (parts.length != 1) {
+					throw new IllegalArgumentException("hotspot takes <key%>:<op%> or no arguments");
+				}
+				if (hotKeyPercentage <= 0 || hotKeyPercentage > 100 || hotOpPercentage < 0 || hotOpPercentage > 100) {
+					throw new IllegalArgumentException("hotspot percentages must be in (0, 100]");
+				}
+			} else if (!distribution.equals("uniform") && !distribution.equals("sequential")) {
+				throw new IllegalArgumentException("unknown distribution " + distribution);
+			}
+		} else if (arg.startsWith("range=")) {
+			range = Integer.parseInt(arg.substring("range=".length()));
+			if (range < 1) {
+				throw new IllegalArgumentException("range must be > 0");
+			}
+		} else if (arg.startsWith("prefill=")) {
+			prefill = Integer.parseInt(arg.substring("prefill=".length()));
+			if (prefill < 0) {
+				throw new IllegalArgumentException("prefill must be >= 0");
+			}
+		} else if (arg.startsWith("mix=")) {
+			String[] parts = arg.substring("mix=".length()).split(":");
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("mix needs three percentages");
+			}
+			addPercentage = Integer.parseInt(parts[0]);
+			removePercentage = Integer.parseInt(parts[1]);
+			int containsPercentage = Integer.parseInt(parts[2]);
+			if (addPercentage < 0 || removePercentage < 0 || containsPercentage < 0
+					|| addPercentage + removePercentage + containsPercentage != 100) {
+				throw new IllegalArgumentException("mix percentages must add up to 100");
+			}
+		} else {
+			return false;
+		}
+		enabled = true;
+		return true;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/*
+	 * Returns prefill distinct keys from the key range, in random order;
+	 * doubles tells whether the structure keeps duplicates.
+	 */
+	public int[] prefillKeys(int nrItems, boolean doubles, long seed) {
+		int keyRange = keyRange(nrItems);
+		int count = Math.min(prefill >= 0 ? prefill : doubles ? 0 : keyRange / 2, keyRange);
+		int[] keys = new int[count];
+		Random random = new Random(seed);
+		// a random walk with a step coprime to the range visits each key once
+		long step = 1 + random.nextInt(keyRange);
+		while (gcd(step, keyRange) != 1) {
+			step++;
+		}
+		long key = random.nextInt(keyRange);
+		for (int i = 0; i < count; i++) {
+			keys[i] = (int) key;
+			key = (key + step) % keyRange;
+		}
+		return keys;
+	}
+
+	/*
+	 * Generates opsPerThread operations for each of nrThreads workers,
+	 * deterministically for a given seed, plus the removes that close a
+	 * balanced stream for a structure that keeps duplicates.
+	 */
+	public OperationStream[] generate(int nrThreads, int opsPerThread, int nrItems, boolean doubles, long seed) {
+		int keyRange = keyRange(nrItems);
+		boolean closed = doubles && addPercentage == removePercentage;
+		OperationStream[] streams = new OperationStream[nrThreads];
+		KeyDistribution shared = null;
+		if (distribution.equals("zipf")) {
+			shared = new ZipfianKeys(keyRange, theta); // expensive to set up, stateless
+		}
+		for (int t = 0; t < nrThreads; t++) {
+			Random random = new Random(seed + t);
+			KeyDistribution keys = shared != null ? shared : newDistribution(keyRange, t, opsPerThread);
+			byte[] ops = new byte[opsPerThread];
+			int[] args = new int[opsPerThread];
+			// keys this stream added and has not removed, for doubles
+			int[] held = new int[opsPerThread];
+			int nrHeld = 0;
+			for (int i = 0; i < opsPerThread; i++) {
+				int r = random.nextInt(100);
+				ops[i] = r < addPercentage ? ADD : r < addPercentage + removePercentage ? REMOVE : CONTAINS;
+				if (ops[i] == REMOVE && closed && nrHeld == 0) {
+					ops[i] = ADD;
+				}
+				if (ops[i] == REMOVE && doubles && nrHeld > 0) {
+					int index = random.nextInt(nrHeld);
+					args[i] = held[index];
+					held[index] = held[--nrHeld];
+				} else {
+					args[i] = keys.next(random);
+					if (ops[i] == ADD && doubles) {
+						held[nrHeld++] = args[i];
+					}
+				}
+			}
+			if (closed) {
+				ops = Arrays.copyOf(ops, opsPerThread + nrHeld);
+				args = Arrays.copyOf(args, opsPerThread + nrHeld);
+				for (int i = 0; i < nrHeld; i++) {
+					ops[opsPerThread + i] = REMOVE;
+					args[opsPerThread + i] = held[i];
+				}
+			}
+			streams[t] = new OperationStream(ops, args);
+		}
+		return streams;
+	}
+
+	private KeyDistribution newDistribution(int keyRange, int thread, int opsPerThread) {
+		if (distribution.equals("sequential")) {
+			// every thread ascends through its own slice, as in keys=sorted
+			return new SequentialKeys((int) ((long) thread * opsPerThread % keyRange), keyRange);
+		} else if (distribution.equals("hotspot")) {
+			return new HotspotKeys(keyRange, hotKeyPercentage, hotOpPercentage);
+		}
+		return new UniformKeys(keyRange);
+	}
+
+	// Keys are drawn from [0, keyRange(nrItems))
+	public int keyRange(int nrItems) {
+		return range > 0 ? range : nrItems;
+	}
+
+	private static long gcd(long a, long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	public String toString() {
+		return String.format("dist=%s range=%d prefill=%s mix=%d:%d:%d", distribution, range,
+				prefill >= 0 ? Integer.toString(prefill) : "default", addPercentage, removePercentage,
+				100 - addPercentage - removePercentage);
+	}
+}
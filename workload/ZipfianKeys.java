@@ -0,0 +1,63 @@
+package data_structures.workload;
+
+import java.util.Random;
+
+/*
+ * Zipfian distribution over [0, range) with skew theta, using the
+ * closed-form generator of Gray et al. ("Quickly generating billion-record
+ * synthetic databases") as in YCSB. Rank r is drawn with probability
+ * proportional to 1 / (r + 1)^theta and mapped to a key by multiplying
+ * with a constant coprime to range, so the hot keys are spread over the
+ * key space instead of all sitting at the head of a list.
+ */
+public class ZipfianKeys implements KeyDistribution {
+
+	private static final long SCATTER = 0x9E3779B1L;
+
+	private int range;
+	private double theta;
+	private double zetan;
+	private double alpha;
+	private double eta;
+	private long multiplier;
+
+	public ZipfianKeys(int range, double theta) {
+		this.range = range;
+		this.theta = theta;
+		this.zetan = zeta(range, theta);
+		double zeta2 = zeta(2, theta);
+		this.alpha = 1.0 / (1.0 - theta);
+		this.eta = (1 - Math.pow(2.0 / range, 1 - theta)) / (1 - zeta2 / zetan);
+		long m = SCATTER % range;
+		while (gcd(m, range) != 1) {
+			m++;
+		}
+		this.multiplier = m;
+	}
+
+	public int next(Random random) {
+		double u = random.nextDouble();
+		double uz = u * zetan;
+		long rank;
+		if (uz < 1.0) {
+			rank = 0;
+		} else if (uz < 1.0 + Math.pow(0.5, theta)) {
+			rank = 1;
+		} else {
+			rank = Math.min(range - 1, (long) (range * Math.pow(eta * u - eta + 1, alpha)));
+		}
+		return (int) (rank * multiplier % range);
+	}
+
+	private static double zeta(int n, double theta) {
+		double sum = 0;
+		for (int i = 1; i <= n; i++) {
+			sum += 1 / Math.pow(i, theta);
+		}
+		return sum;
+	}
+
+	private static long gcd(long a, long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+}